@@ -0,0 +1,77 @@
+package com.ota.jlox;
+
+import java.util.HashMap;
+import java.util.Random;
+
+// Compares LoxMap with the straightforward alternative, a java.util.HashMap wrapped to follow
+// the same key semantics, on the operations of aggregation scripts: counting keys drawn at random
+// from a vocabulary a tenth of their number, lookups and deletions. Drawn at random because keys
+// in hash order, like "key-1", "key-2"..., walk the HashMap table sequentially, which real
+// data does not. In this package as LoxMap is internal, but in the bench tree so that it is not
+// shipped: compile it together with src.
+class MapBenchmark {
+	// java.util.HashMap keyed like LoxMap: strings by their String, numbers as boxed Longs, the
+	// form integral numbers take in the interpreter.
+	private static class Wrapped {
+		private final HashMap<Object, Object> map = new HashMap<>();
+
+		Object get(Object key) { return this.map.get(normalize(key)); }
+		boolean has(Object key) { return this.map.containsKey(normalize(key)); }
+		void set(Object key, Object value) { this.map.put(normalize(key), value); }
+		boolean delete(Object key) { return this.map.remove(normalize(key)) != null; }
+
+		private static Object normalize(Object key) {
+			return (key instanceof CharSequence) ? key.toString() : key;
+		}
+	}
+
+	public static void main(String[] args) {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+		Random random = new Random(42);
+		Object[] numbers = new Object[count];
+		Object[] strings = new Object[count];
+		for(int i = 0; i < count; i++) {
+			int key = random.nextInt(count / 10);
+			numbers[i] = (long)key;
+			strings[i] = "key-" + key;
+		}
+
+		// every round formats its results and the last one prints them: a report reached only in the
+		// last round would deoptimize run right before the timing of the strings.
+		for(int round = 0; round < 5; round++) {
+			String results = run("numbers", numbers) + run("strings", strings);
+			if(round == 4) System.out.print(results);
+		}
+	}
+
+	private static String run(String name, Object[] keys) {
+		long start = System.nanoTime();
+		LoxMap lox = new LoxMap(null);
+		for(Object key : keys) {
+			Object count = lox.get(key);
+			lox.set(key, (count == null) ? 1L : (long)count + 1);
+		}
+		long hits = 0;
+		for(Object key : keys) {
+			if(lox.has(key)) hits++;
+		}
+		for(int i = 0; i < keys.length; i += 2) lox.delete(keys[i]);
+		long loxNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		Wrapped wrapped = new Wrapped();
+		for(Object key : keys) {
+			Object count = wrapped.get(key);
+			wrapped.set(key, (count == null) ? 1L : (long)count + 1);
+		}
+		for(Object key : keys) {
+			if(wrapped.has(key)) hits--;
+		}
+		for(int i = 0; i < keys.length; i += 2) wrapped.delete(keys[i]);
+		long wrappedNanos = System.nanoTime() - start;
+
+		if(hits != 0) throw new IllegalStateException("The maps disagree.");
+		return String.format("%-8s LoxMap %6.1f ns/key   HashMap %6.1f ns/key   %.2fx%n", name,
+			(double)loxNanos / keys.length, (double)wrappedNanos / keys.length, (double)wrappedNanos / loxNanos);
+	}
+}
@@ -0,0 +1,63 @@
+package com.ota.jlox;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Times a long loop of a function called once, which only gets compiled by switching the running
+// loop over (on-stack replacement, see Tiering), with the switch and without it. Every run is a
+// fresh JVM, as the tiering settings are read once and a warm JVM would hide what the switch costs,
+// and the median of the runs is reported: on a busy machine single runs vary a lot.
+class OsrBenchmark {
+	private static final String SCRIPT =
+		"fun main(n) {\n" +
+		"	var start = clock();\n" +
+		"	var s = 0;\n" +
+		"	for(var i = 0; i < n; i = i + 1) { s = s + i * 2 - 1; }\n" +
+		"	print clock() - start;\n" +
+		"}\n" +
+		"main(%d);\n";
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int runs = (args.length > 0) ? Integer.parseInt(args[0]) : 7;
+		int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 5_000_000;
+		Path script = Files.createTempFile("osr", ".jlox");
+		try {
+			Files.write(script, String.format(SCRIPT, iterations).getBytes(StandardCharsets.UTF_8));
+			double switched = median(runs, script, Tiering.OSR_THRESHOLD);
+			double interpreted = median(runs, script, Integer.MAX_VALUE);
+			System.out.printf("%d iterations   switched %.3fs   interpreted %.3fs   %.2fx%n",
+				iterations, switched, interpreted, interpreted / switched);
+		} finally {
+			Files.delete(script);
+		}
+	}
+
+	private static double median(int runs, Path script, int threshold) throws IOException, InterruptedException {
+		double[] seconds = new double[runs];
+		for(int i = 0; i < runs; i++) seconds[i] = run(script, threshold);
+		Arrays.sort(seconds);
+		return seconds[runs / 2];
+	}
+
+	// the time the script measured itself, so the start of the JVM does not count.
+	private static double run(Path script, int threshold) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("-Djlox.tiering.osrThreshold=" + threshold);
+		command.add("com.ota.jlox.Main");
+		command.add(script.toString());
+
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+		if(process.waitFor() != 0) throw new IllegalStateException("The run failed: " + output);
+		return Double.parseDouble(output);
+	}
+}
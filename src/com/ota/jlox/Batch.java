@@ -0,0 +1,94 @@
+package com.ota.jlox;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Runs every .jlox file of a directory: all the files are compiled in parallel first, then
+// executed in parallel, each one in its own Session with its output captured.
+class Batch {
+	private final Path directory;
+
+	Batch(String directory) {
+		this.directory = Paths.get(directory);
+	}
+
+	// returns 0 when every script succeeded, otherwise the status of the first failing one.
+	int run() throws IOException {
+		List<Job> jobs;
+		try(Stream<Path> paths = Files.walk(this.directory)) {
+			jobs = paths
+				.filter(path -> path.toString().endsWith(".jlox") && Files.isRegularFile(path))
+				.sorted()
+				.map(Job::new)
+				.collect(Collectors.toList());
+		}
+
+		long start = System.nanoTime();
+		jobs.parallelStream().forEach(Job::compile);
+		jobs.parallelStream().forEach(Job::execute);
+		long elapsed = System.nanoTime() - start;
+
+		int status = 0;
+		for(Job job : jobs) {
+			System.out.println("== " + job.path);
+			System.out.print(job.out);
+			System.err.print(job.err);
+			System.err.flush();
+			if(status == 0) status = job.status;
+		}
+
+		System.out.println();
+		System.out.printf("%-8s %10s %10s %10s  %s%n", "status", "compile", "execute", "peak", "script");
+		for(Job job : jobs) {
+			System.out.printf("%-8d %8.2fms %8.2fms %8.1fkB  %s%n", job.status, job.compileTime / 1e6, job.executeTime / 1e6, Math.max(0, job.session.peakMemory()) / 1024.0, job.path);
+		}
+		System.out.printf("%d scripts in %.2fms%n", jobs.size(), elapsed / 1e6);
+		return status;
+	}
+
+	private static class Job {
+		final Path path;
+		final StringWriter out = new StringWriter();
+		final StringWriter err = new StringWriter();
+		final Session session = new Session(new PrintWriter(this.out), new PrintWriter(this.err));
+
+		CompiledScript script;
+		int status;
+		long compileTime;
+		long executeTime;
+
+		Job(Path path) {
+			this.path = path;
+			this.session.limitMemory(0);
+			this.session.allowFiles();
+		}
+
+		void compile() {
+			long start = System.nanoTime();
+			try {
+				String source = new String(Files.readAllBytes(this.path), Charset.defaultCharset());
+				this.script = this.session.compile(source);
+			} catch(IOException error) {
+				this.session.err.println("Could not read '" + this.path + "'.");
+				this.session.hadError = true;
+			}
+			this.status = this.session.status();
+			this.compileTime = System.nanoTime() - start;
+		}
+
+		void execute() {
+			if(this.script == null) return;
+			long start = System.nanoTime();
+			this.status = this.session.execute(this.script);
+			this.executeTime = System.nanoTime() - start;
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.ota.jlox;
+
+// Execution limits of one run, charged at every loop iteration and every function call. The
+// common path is a decrement and a compare; every CHECK_INTERVAL steps the deadline is checked
+// and the thread yields, so scripts on virtual threads share their carriers fairly.
+// The tasks of a run share its budget without synchronization, the step count is approximate then.
+class Budget {
+	private static final int CHECK_INTERVAL = 1024;
+
+	private final long deadline;
+	private final boolean timed;
+	private long remaining;
+	private int countdown = CHECK_INTERVAL;
+
+	// a limit of 0 means unlimited.
+	Budget(long steps, long timeoutMillis) {
+		this.remaining = (steps > 0) ? steps : Long.MAX_VALUE;
+		this.timed = timeoutMillis > 0;
+		this.deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+	}
+
+	// whether the wall clock limit passed, for waits which take no steps.
+	boolean expired() {
+		return this.timed && System.nanoTime() - this.deadline > 0;
+	}
+
+	void tick(Token where) {
+		if(--this.remaining < 0) throw new RuntimeError(where, "Execution step limit exceeded.");
+		if(--this.countdown > 0) return;
+
+		this.countdown = CHECK_INTERVAL;
+		if(this.timed && System.nanoTime() - this.deadline > 0) throw new RuntimeError(where, "Execution time limit exceeded.");
+		Thread.yield();
+	}
+}
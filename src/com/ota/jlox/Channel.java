@@ -0,0 +1,87 @@
+package com.ota.jlox;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded queue between tasks: send waits while it is full and receive while it is empty. Once
+// closed, send fails and receive drains what is left then returns nil. Locks rather than
+// synchronized, which would pin the virtual threads waiting on it to their carriers.
+class Channel {
+	private final Object[] items;
+	private int head = 0;
+	private int count = 0;
+	private boolean closed = false;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = this.lock.newCondition();
+	private final Condition notFull = this.lock.newCondition();
+
+	Channel(int capacity) {
+		this.items = new Object[capacity];
+	}
+
+	// the value goes to another task, see Environment.share.
+	void send(Interpreter interpreter, Object value) {
+		Environment.share(value);
+		this.lock.lock();
+		try {
+			while(this.count == this.items.length && !this.closed) await(interpreter, this.notFull);
+			if(this.closed) throw new Natives.Error("Channel is closed.");
+
+			this.items[(this.head + this.count) % this.items.length] = value;
+			this.count++;
+			this.notEmpty.signal();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	Object receive(Interpreter interpreter) {
+		this.lock.lock();
+		try {
+			while(this.count == 0 && !this.closed) await(interpreter, this.notEmpty);
+			if(this.count == 0) return null;
+
+			Object value = this.items[this.head];
+			this.items[this.head] = null;
+			this.head = (this.head + 1) % this.items.length;
+			this.count--;
+			this.notFull.signal();
+			return value;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	void close() {
+		this.lock.lock();
+		try {
+			this.closed = true;
+			this.notEmpty.signalAll();
+			this.notFull.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	// waits on condition, checking the time limit of the run every 10ms.
+	private static void await(Interpreter interpreter, Condition condition) {
+		try {
+			Budget budget = interpreter.budget;
+			if(budget == null) {
+				condition.await();
+			} else {
+				condition.await(10, TimeUnit.MILLISECONDS);
+				if(budget.expired()) throw new Natives.Error("Execution time limit exceeded.");
+			}
+		} catch(InterruptedException error) {
+			Thread.currentThread().interrupt();
+			throw new Natives.Error("Interrupted.");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "<channel>";
+	}
+}
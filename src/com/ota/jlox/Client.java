@@ -0,0 +1,47 @@
+package com.ota.jlox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+
+// Thin client of the Server, it forwards a script and replays the output and the exit status.
+class Client {
+	private final String socket;
+
+	Client(String socket) {
+		this.socket = socket;
+	}
+
+	int runFile(String filepath) throws IOException {
+		return send(Frame.FILE, Paths.get(filepath).toAbsolutePath().toString());
+	}
+
+	int runSource(String source) throws IOException {
+		return send(Frame.SOURCE, source);
+	}
+
+	private int send(byte type, String payload) throws IOException {
+		try(SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(this.socket))) {
+			Frame.write(channel, type, payload);
+
+			while(true) {
+				Frame frame = Frame.read(channel);
+				if(frame == null) throw new IOException("Server closed the connection.");
+
+				switch(frame.type) {
+					case Frame.OUT: print(System.out, frame); break;
+					case Frame.ERR: print(System.err, frame); break;
+					case Frame.EXIT: return frame.status();
+					default: break;
+				}
+			}
+		}
+	}
+
+	private static void print(PrintStream stream, Frame frame) {
+		stream.write(frame.payload, 0, frame.payload.length);
+		stream.flush();
+	}
+}
@@ -0,0 +1,472 @@
+package com.ota.jlox;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Second execution tier: translates a function body into a tree of Java closures. Operators,
+// resolved depths and literals are decided once here instead of on every visit, and each node
+// costs one virtual call instead of accept + visit. The closures run on the same Environments
+// as the Interpreter, so compiled and interpreted functions call each other freely.
+class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Value>, Stmt.Visitor<ClosureCompiler.Code> {
+
+	// abstract classes rather than interfaces: the calls between nodes are megamorphic and a
+	// virtual call through the vtable is much cheaper than an interface call through the itable.
+	abstract static class Code {
+		// true when a return statement completed the body, the value is left in Interpreter.returned.
+		// Unwinding with the Return exception costs a lot more here as these calls never get inlined.
+		abstract boolean run(Interpreter interpreter, Environment environment);
+	}
+
+	abstract static class Value {
+		abstract Object eval(Interpreter interpreter, Environment environment);
+	}
+
+	// thrown for nodes this tier does not handle, the function then stays interpreted.
+	static class Unsupported extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		Unsupported(String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	Code compile(List<Stmt> body) {
+		return sequence(body);
+	}
+
+	Code compile(Stmt.While loop) {
+		return statement(loop);
+	}
+
+	private Code sequence(List<Stmt> statements) {
+		Code[] codes = new Code[statements.size()];
+		for(int i = 0; i < codes.length; i++) {
+			codes[i] = statement(statements.get(i));
+		}
+
+		if(codes.length == 1) return codes[0];
+		return new Code() {
+			boolean run(Interpreter interpreter, Environment environment) {
+				for(Code code : codes) {
+					if(code.run(interpreter, environment)) return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	private Code statement(Stmt statement) {
+		Code code = statement.accept(this);
+		if(!Metrics.ENABLED) return code;
+		return new Code() {
+			boolean run(Interpreter interpreter, Environment environment) {
+				Metrics.statements.increment();
+				return code.run(interpreter, environment);
+			}
+		};
+	}
+
+	private Value expression(Expr expression) {
+		return expression.accept(this);
+	}
+
+	@Override
+	public Code visitBlockStmt(Stmt.Block block) {
+		Code body = sequence(block.statements);
+		return new Code() {
+			boolean run(Interpreter interpreter, Environment environment) {
+				Environment scope = new Environment(environment);
+				boolean returned = body.run(interpreter, scope);
+				if(scope.memory != null) scope.release();
+				return returned;
+			}
+		};
+	}
+
+	@Override
+	public Code visitClassStmt(Stmt.Class klass) {
+		throw new Unsupported("class declaration");
+	}
+
+	@Override
+	public Code visitExpressionStmt(Stmt.Expression statement) {
+		Value value = expression(statement.expression);
+		return new Code() {
+			boolean run(Interpreter interpreter, Environment environment) {
+				value.eval(interpreter, environment);
+				return false;
+			}
+		};
+	}
+
+	@Override
+	public Code visitFunctionStmt(Stmt.Function function) {
+		Token name = function.name;
+		return new Code() {
+			boolean run(Interpreter interpreter, Environment environment) {
+				environment.define(name, new LoxFunction(function, environment));
+				return false;
+			}
+		};
+	}
+
+	@Override
+	public Code visitIfStmt(Stmt.If statement) {
+		Value condition = expression(statement.condition);
+		Code thenBranch = statement(statement.thenBranch);
+		if(statement.elseBranch == null) {
+			return new Code() {
+				boolean run(Interpreter interpreter, Environment environment) {
+					if(Operators.isTruthy(condition.eval(interpreter, environment))) return thenBranch.run(interpreter, environment);
+					return false;
+				}
+			};
+		}
+
+		Code elseBranch = statement(statement.elseBranch);
+		return new Code() {
+			boolean run(Interpreter interpreter, Environment environment) {
+				if(Operators.isTruthy(condition.eval(interpreter, environment))) {
+					return thenBranch.run(interpreter, environment);
+				} else {
+					return elseBranch.run(interpreter, environment);
+				}
+			}
+		};
+	}
+
+	@Override
+	public Code visitPrintStmt(Stmt.Print statement) {
+		Value value = expression(statement.expression);
+		return new Code() {
+			boolean run(Interpreter interpreter, Environment environment) {
+				interpreter.session.out.println(Interpreter.stringify(value.eval(interpreter, environment)));
+				return false;
+			}
+		};
+	}
+
+	@Override
+	public Code visitReturnStmt(Stmt.Return statement) {
+		if(statement.value == null) {
+			return new Code() {
+				boolean run(Interpreter interpreter, Environment environment) {
+					interpreter.returned = null;
+					return true;
+				}
+			};
+		}
+
+		Value value = expression(statement.value);
+		return new Code() {
+			boolean run(Interpreter interpreter, Environment environment) {
+				interpreter.returned = value.eval(interpreter, environment);
+				return true;
+			}
+		};
+	}
+
+	@Override
+	public Code visitVarStmt(Stmt.Var variable) {
+		Token name = variable.name;
+		if(variable.initializer == null) {
+			return new Code() {
+				boolean run(Interpreter interpreter, Environment environment) {
+					environment.define(name, null);
+					return false;
+				}
+			};
+		}
+
+		Value initializer = expression(variable.initializer);
+		return new Code() {
+			boolean run(Interpreter interpreter, Environment environment) {
+				environment.define(name, initializer.eval(interpreter, environment));
+				return false;
+			}
+		};
+	}
+
+	@Override
+	public Code visitWhileStmt(Stmt.While statement) {
+		Token keyword = statement.keyword;
+		Value condition = expression(statement.condition);
+		Code body = statement(statement.body);
+		return new Code() {
+			boolean run(Interpreter interpreter, Environment environment) {
+				while(Operators.isTruthy(condition.eval(interpreter, environment))) {
+					if(body.run(interpreter, environment)) return true;
+					if(interpreter.budget != null) interpreter.budget.tick(keyword);
+				}
+				return false;
+			}
+		};
+	}
+
+
+	// generators run interpreted, see LoxGenerator.
+	@Override
+	public Code visitYieldStmt(Stmt.Yield statement) {
+		throw new Unsupported("yield");
+	}
+
+	@Override
+	public Value visitAssignExpr(Expr.Assign assignment) {
+		Token name = assignment.name;
+		int depth = assignment.depth;
+		Value value = expression(assignment.value);
+		if(depth < 0) {
+			return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					Object result = value.eval(interpreter, environment);
+					interpreter.globals.assign(name, result);
+					return result;
+				}
+			};
+		}
+
+		return new Value() {
+			Object eval(Interpreter interpreter, Environment environment) {
+				Object result = value.eval(interpreter, environment);
+				environment.assignAt(depth, name, result);
+				return result;
+			}
+		};
+	}
+
+	@Override
+	public Value visitBinaryExpr(Expr.Binary binary) {
+		Token operator = binary.operator;
+		Value left = expression(binary.left);
+		Value right = expression(binary.right);
+
+		switch(operator.type) {
+			case MINUS: return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					return Operators.subtract(operator, left.eval(interpreter, environment), right.eval(interpreter, environment));
+				}
+			};
+			case SLASH: return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					return Operators.divide(operator, left.eval(interpreter, environment), right.eval(interpreter, environment));
+				}
+			};
+			case STAR: return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					return Operators.multiply(operator, left.eval(interpreter, environment), right.eval(interpreter, environment));
+				}
+			};
+			case PLUS: return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					return Operators.add(operator, left.eval(interpreter, environment), right.eval(interpreter, environment));
+				}
+			};
+
+			case GREATER: return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					return Operators.greater(operator, left.eval(interpreter, environment), right.eval(interpreter, environment));
+				}
+			};
+			case GREATER_EQUAL: return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					return Operators.greaterEqual(operator, left.eval(interpreter, environment), right.eval(interpreter, environment));
+				}
+			};
+			case LESS: return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					return Operators.less(operator, left.eval(interpreter, environment), right.eval(interpreter, environment));
+				}
+			};
+			case LESS_EQUAL: return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					return Operators.lessEqual(operator, left.eval(interpreter, environment), right.eval(interpreter, environment));
+				}
+			};
+
+			case BANG_EQUAL: return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					return !Operators.isEqual(left.eval(interpreter, environment), right.eval(interpreter, environment));
+				}
+			};
+			case EQUAL_EQUAL: return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					return Operators.isEqual(left.eval(interpreter, environment), right.eval(interpreter, environment));
+				}
+			};
+			default:
+				throw new Unsupported("binary operator '" + operator.lexeme + "'");
+		}
+	}
+
+	@Override
+	public Value visitCallExpr(Expr.Call call) {
+		Token paren = call.paren;
+		Value[] arguments = new Value[call.arguments.size()];
+		for(int i = 0; i < arguments.length; i++) {
+			arguments[i] = expression(call.arguments.get(i));
+		}
+		if(call.callee instanceof Expr.Get) return invoke(paren, (Expr.Get)call.callee, arguments);
+
+		Value callee = expression(call.callee);
+		return new Value() {
+			Object eval(Interpreter interpreter, Environment environment) {
+				Object function = callee.eval(interpreter, environment);
+				Object[] values = new Object[arguments.length];
+				for(int i = 0; i < values.length; i++) {
+					values[i] = arguments[i].eval(interpreter, environment);
+				}
+				return interpreter.call(paren, function, Arrays.asList(values));
+			}
+		};
+	}
+
+	// `object.name(...)`, see Interpreter.invoke.
+	private Value invoke(Token paren, Expr.Get get, Value[] arguments) {
+		Value object = expression(get.object);
+		return new Value() {
+			Object eval(Interpreter interpreter, Environment environment) {
+				Object value = object.eval(interpreter, environment);
+				if(!(value instanceof LoxInstance)) throw new RuntimeError(get.name, "Only instances have properties.");
+
+				LoxInstance instance = (LoxInstance)value;
+				LoxFunction method = instance.method(get);
+				Object function = (method == null) ? instance.get(get) : null;
+				Object[] values = new Object[arguments.length];
+				for(int i = 0; i < values.length; i++) {
+					values[i] = arguments[i].eval(interpreter, environment);
+				}
+				if(method != null) return interpreter.invoke(paren, method, instance, Arrays.asList(values));
+				return interpreter.call(paren, function, Arrays.asList(values));
+			}
+		};
+	}
+
+	@Override
+	public Value visitGetExpr(Expr.Get get) {
+		Value object = expression(get.object);
+		return new Value() {
+			Object eval(Interpreter interpreter, Environment environment) {
+				Object value = object.eval(interpreter, environment);
+				if(value instanceof LoxInstance) return ((LoxInstance)value).get(get);
+				throw new RuntimeError(get.name, "Only instances have properties.");
+			}
+		};
+	}
+
+	@Override
+	public Value visitGroupingExpr(Expr.Grouping group) {
+		return expression(group.expression);
+	}
+
+	@Override
+	public Value visitLiteralExpr(Expr.Literal literal) {
+		Object value = literal.value;
+		return new Value() {
+			Object eval(Interpreter interpreter, Environment environment) {
+				return value;
+			}
+		};
+	}
+
+	@Override
+	public Value visitLogicalExpr(Expr.Logical logical) {
+		Value left = expression(logical.left);
+		Value right = expression(logical.right);
+		if(logical.operator.type == TokenType.OR) {
+			return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					Object value = left.eval(interpreter, environment);
+					if(Operators.isTruthy(value)) return value;
+					return right.eval(interpreter, environment);
+				}
+			};
+		}
+
+		return new Value() {
+			Object eval(Interpreter interpreter, Environment environment) {
+				Object value = left.eval(interpreter, environment);
+				if(!Operators.isTruthy(value)) return value;
+				return right.eval(interpreter, environment);
+			}
+		};
+	}
+
+	@Override
+	public Value visitSetExpr(Expr.Set set) {
+		Value object = expression(set.object);
+		Value value = expression(set.value);
+		return new Value() {
+			Object eval(Interpreter interpreter, Environment environment) {
+				Object instance = object.eval(interpreter, environment);
+				if(!(instance instanceof LoxInstance)) throw new RuntimeError(set.name, "Only instances have fields.");
+				Object result = value.eval(interpreter, environment);
+				((LoxInstance)instance).set(set, result);
+				return result;
+			}
+		};
+	}
+
+	@Override
+	public Value visitSuperExpr(Expr.Super expression) {
+		int depth = expression.depth;
+		Token method = expression.method;
+		return new Value() {
+			Object eval(Interpreter interpreter, Environment environment) {
+				LoxClass superclass = (LoxClass)environment.getAt(depth, "super");
+				LoxFunction function = superclass.findMethod(method.lexeme);
+				if(function == null) throw new RuntimeError(method, "Undefined property '" + method.lexeme + "'.");
+				return function.bind((LoxInstance)environment.getAt(depth - 1, "this"));
+			}
+		};
+	}
+
+	@Override
+	public Value visitThisExpr(Expr.This expression) {
+		int depth = expression.depth;
+		return new Value() {
+			Object eval(Interpreter interpreter, Environment environment) {
+				return environment.getAt(depth, "this");
+			}
+		};
+	}
+
+	@Override
+	public Value visitUnaryExpr(Expr.Unary unary) {
+		Token operator = unary.operator;
+		Value right = expression(unary.right);
+		switch(operator.type) {
+			case BANG: return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					return !Operators.isTruthy(right.eval(interpreter, environment));
+				}
+			};
+			case MINUS: return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					return Operators.negate(operator, right.eval(interpreter, environment));
+				}
+			};
+			default:
+				throw new Unsupported("unary operator '" + operator.lexeme + "'");
+		}
+	}
+
+	@Override
+	public Value visitVariableExpr(Expr.Variable variable) {
+		Token name = variable.name;
+		int depth = variable.depth;
+		if(depth < 0) {
+			return new Value() {
+				Object eval(Interpreter interpreter, Environment environment) {
+					return interpreter.globals.get(name);
+				}
+			};
+		}
+
+		String lexeme = name.lexeme;
+		return new Value() {
+			Object eval(Interpreter interpreter, Environment environment) {
+				return environment.getAt(depth, lexeme);
+			}
+		};
+	}
+}
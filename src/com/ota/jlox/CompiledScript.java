@@ -0,0 +1,22 @@
+package com.ota.jlox;
+
+import java.util.Collections;
+import java.util.List;
+
+// A lexed, parsed and resolved program. The resolved depths live on the AST nodes, which one
+// CompiledScript can run any number of times, concurrently, in different Sessions. The structure
+// of the tree is fixed after compilation, but a few fields of its nodes keep changing and are
+// shared by every session running it:
+// - hits, the --hits counters, are plain increments which may lose counts under concurrent runs;
+// - heat, queued and compiled of functions and while loops are the tiering state. compiled is
+//   volatile and its code only depends on the tree, so every session can run it;
+// - cache of get and set expressions is an inline cache. It only holds immutable properties,
+//   checked against the shape of the instance before use, and weakly, so it does not keep the
+//   classes of a session alive once it is done.
+public final class CompiledScript {
+	final List<Stmt> statements;
+
+	CompiledScript(List<Stmt> statements) {
+		this.statements = Collections.unmodifiableList(statements);
+	}
+}
@@ -1,61 +1,218 @@
-package com.ota.jlox;
-
-import java.util.HashMap;
-import java.util.Map;
-
-class Environment {
-    private final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
-
-    Environment() {
-        this.enclosing = null;
-    }
-
-    Environment(Environment enclosing) {
-        this.enclosing = enclosing;
-    }
-    
-    public void define(String name, Object value) {
-        values.put(name, value);
-    }
-
-    public Object get(Token name) {
-        if(values.containsKey(name.lexeme))
-            return values.get(name.lexeme);
-        
-        if(this.enclosing != null)
-            return this.enclosing.get(name);
-        
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
-    }
-
-    public Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
-    }
-
-    private Environment ancestor(int distance) {
-        Environment env = this;
-        for(int i = 0; i < distance; i++) {
-            env = env.enclosing;
-        }
-        return env;
-    }
-
-    public void assign(Token name, Object value) {
-        if(values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
-
-        if(this.enclosing != null) {
-            this.enclosing.assign(name, value);
-            return;
-        }
-
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
-    }
-
-    public void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
-    }
-}
+package com.ota.jlox;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+class Environment {
+    private final Environment enclosing;
+    private final Map<String, Object> values;
+
+    // accounting of the run, inherited from the enclosing environment, null when disabled.
+    Memory memory;
+    private long charged = 0;
+    private boolean captured = false;
+    // once the scope of a captured environment ended, what it is charged until it is collected.
+    private Memory.Retained retained = null;
+    // set once tasks share the environment, see share(). From then on reads are shared and writes
+    // exclusive.
+    private StampedLock lock = null;
+
+    private static final Object ABSENT = new Object();
+
+    Environment() {
+        this(new HashMap<>(), null);
+    }
+
+    // top level environment backed by the given map, e.g. the Bindings of a ScriptContext, under
+    // an optional enclosing one holding the natives.
+    Environment(Map<String, Object> values, Environment enclosing) {
+        this.enclosing = enclosing;
+        this.values = values;
+        if(Metrics.ENABLED) Metrics.environments.increment();
+    }
+
+    Environment(Environment enclosing) {
+        this.enclosing = enclosing;
+        this.values = new HashMap<>();
+        if(Metrics.ENABLED) Metrics.environments.increment();
+        this.memory = enclosing.memory;
+        if(this.memory != null) charge(Memory.ENVIRONMENT);
+    }
+    
+    public void define(String name, Object value) {
+        StampedLock lock = this.lock;
+        if(lock == null) {
+            put(name, value, true);
+            return;
+        }
+
+        share(value);
+        long stamp = lock.writeLock();
+        try {
+            put(name, value, true);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // define from the script, checked against the memory limit.
+    public void define(Token name, Object value) {
+        define(name.lexeme, value);
+        if(this.memory != null) this.memory.check(name);
+    }
+
+    public Object get(Token name) {
+        // a single lookup, ABSENT tells a missing variable from nil.
+        Object value = read(name.lexeme, ABSENT);
+        if(value != ABSENT)
+            return value;
+        
+        if(this.enclosing != null)
+            return this.enclosing.get(name);
+        
+        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    }
+
+    public Object getAt(int distance, String name) {
+        return ancestor(distance).read(name, null);
+    }
+
+    private Environment ancestor(int distance) {
+        Environment env = this;
+        for(int i = 0; i < distance; i++) {
+            env = env.enclosing;
+        }
+        return env;
+    }
+
+    public void assign(Token name, Object value) {
+        StampedLock lock = this.lock;
+        boolean assigned;
+        if(lock == null) {
+            assigned = replace(name.lexeme, value);
+        } else {
+            share(value);
+            long stamp = lock.writeLock();
+            try {
+                assigned = replace(name.lexeme, value);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        if(assigned) {
+            if(this.memory != null) this.memory.check(name);
+            return;
+        }
+
+        if(this.enclosing != null) {
+            this.enclosing.assign(name, value);
+            return;
+        }
+
+        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    }
+
+    public void assignAt(int distance, Token name, Object value) {
+        Environment env = ancestor(distance);
+        StampedLock lock = env.lock;
+        if(lock == null) {
+            env.put(name.lexeme, value, false);
+        } else {
+            share(value);
+            long stamp = lock.writeLock();
+            try {
+                env.put(name.lexeme, value, false);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        if(env.memory != null) env.memory.check(name);
+    }
+
+    // values.getOrDefault, under the read lock once shared. Not an optimistic read: a HashMap read
+    // racing with a resize may loop or throw before it could be validated.
+    private Object read(String name, Object absent) {
+        StampedLock lock = this.lock;
+        if(lock == null) return this.values.getOrDefault(name, absent);
+
+        long stamp = lock.readLock();
+        try {
+            return this.values.getOrDefault(name, absent);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void put(String name, Object value, boolean define) {
+        Object previous = this.values.put(name, value);
+        if(this.memory != null) {
+            charge(Memory.sizeOf(value) - Memory.sizeOf(previous));
+            if(define && previous == null) charge(Memory.VARIABLE);
+        }
+    }
+
+    // writes an existing variable of this environment, false when it is not defined here.
+    private boolean replace(String name, Object value) {
+        if(this.memory != null) {
+            if(!this.values.containsKey(name)) return false;
+            put(name, value, false);
+            return true;
+        }
+        // replace only writes an existing variable, a null result means absent or nil before.
+        return this.values.replace(name, value) != null || this.values.containsKey(name);
+    }
+
+    // makes this environment and its ancestors safe to use from several tasks. Only the task
+    // that can reach the environment calls it, before another one can: when spawning, sending on
+    // a channel, or storing the value into an environment already shared.
+    void share() {
+        for(Environment env = this; env != null && env.lock == null; env = env.enclosing) {
+            env.lock = new StampedLock();
+        }
+    }
+
+    // shares the environments reachable from the closures of value. Only variables are covered:
+    // the elements of arrays and maps and the fields of instances are not synchronized, and the
+    // closures stored in them are not shared, see the Tasks section of the README.
+    static void share(Object value) {
+        if(value instanceof LoxFunction) {
+            ((LoxFunction)value).closure.share();
+        } else if(value instanceof LoxClass) {
+            for(LoxClass klass = (LoxClass)value; klass != null; klass = klass.superclass) {
+                for(LoxFunction method : klass.methods.values()) method.closure.share();
+            }
+        } else if(value instanceof LoxInstance) {
+            share(((LoxInstance)value).klass);
+        } else if(value instanceof LoxGenerator) {
+            ((LoxGenerator)value).share();
+        }
+    }
+
+    private void charge(long bytes) {
+        if(this.retained != null) {
+            this.memory.charge(this.retained, bytes);
+            return;
+        }
+        this.charged += bytes;
+        this.memory.charge(bytes);
+    }
+
+    // marks this environment and its ancestors as reachable from a closure.
+    void capture() {
+        for(Environment env = this; env != null && !env.captured; env = env.enclosing) {
+            env.captured = true;
+        }
+    }
+
+    // the scope of this environment ended, gives its memory back. A closure may outlive the scope
+    // of a captured one, whose memory is given back once it is unreachable instead.
+    void release() {
+        if(this.captured) {
+            if(this.retained == null) this.retained = this.memory.retain(this, this.charged);
+        } else {
+            this.memory.charge(-this.charged);
+        }
+        this.charged = 0;
+    }
+}
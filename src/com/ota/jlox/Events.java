@@ -0,0 +1,76 @@
+package com.ota.jlox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+// Java Flight Recorder events of the interpreter. When no recording enables them, begin/commit
+// are no-ops and the JIT removes the event allocations.
+class Events {
+
+	// the threshold can be changed per recording, e.g. jlox.Call#threshold=0 ms
+	@Name("jlox.Call")
+	@Label("Lox Call")
+	@Category("jlox")
+	@Description("Call of a Lox function lasting longer than the threshold.")
+	@Threshold("1 ms")
+	@StackTrace(false)
+	static class Call extends Event {
+		@Label("Function")
+		String function;
+
+		@Label("Line")
+		@Description("Line of the function declaration.")
+		int line;
+	}
+
+	@Name("jlox.Compile")
+	@Label("Lox Compile")
+	@Category("jlox")
+	@Description("Lexing, parsing and resolving of a script.")
+	@StackTrace(false)
+	static class Compile extends Event {
+		@Label("Lex Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long lexDuration;
+
+		@Label("Parse Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long parseDuration;
+
+		@Label("Resolve Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long resolveDuration;
+
+		@Label("Tokens")
+		int tokens;
+
+		@Label("Succeeded")
+		boolean succeeded;
+	}
+
+	@Name("jlox.RuntimeError")
+	@Label("Lox Runtime Error")
+	@Category("jlox")
+	@StackTrace(false)
+	static class Error extends Event {
+		@Label("Message")
+		String message;
+
+		@Label("Line")
+		int line;
+	}
+
+	static void runtimeError(RuntimeError error) {
+		Error event = new Error();
+		if(!event.isEnabled()) return;
+		event.message = error.getMessage();
+		event.line = error.token.line;
+		event.commit();
+	}
+}
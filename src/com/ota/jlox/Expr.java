@@ -1,5 +1,6 @@
 package com.ota.jlox;
 
+import java.lang.ref.WeakReference;
 import java.util.List;
 
 abstract class Expr {
@@ -8,9 +9,13 @@ abstract class Expr {
 		R visitAssignExpr(Assign expr);
 		R visitBinaryExpr(Binary expr);
 		R visitCallExpr(Call expr);
+		R visitGetExpr(Get expr);
 		R visitGroupingExpr(Grouping expr);
 		R visitLiteralExpr(Literal expr);
 		R visitLogicalExpr(Logical expr);
+		R visitSetExpr(Set expr);
+		R visitSuperExpr(Super expr);
+		R visitThisExpr(This expr);
 		R visitUnaryExpr(Unary expr);
 		R visitVariableExpr(Variable expr);
 	}
@@ -29,6 +34,8 @@ abstract class Expr {
 
 		final Token name;
 		final Expr value;
+		// distance to the declaring scope, -1 for globals. Written once by the Resolver.
+		int depth = -1;
 	}
 
 	static class Binary extends Expr {
@@ -66,6 +73,25 @@ abstract class Expr {
 		List<Expr> arguments;
 	}
 
+	static class Get extends Expr {
+
+		Get(Expr object, Token name) {
+			this.object = object;
+			this.name = name;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitGetExpr(this);
+		}
+
+		final Expr object;
+		final Token name;
+		// inline cache: how name resolved on the shape of the last instance read here. Weak, so a
+		// script shared by sessions does not keep the classes of a finished one alive.
+		WeakReference<Shape.Property> cache = null;
+	}
+
 	static class Grouping extends Expr {
 
 		Grouping(Expr expression) {
@@ -112,6 +138,61 @@ abstract class Expr {
 		final Expr right;
 	}
 
+	static class Set extends Expr {
+
+		Set(Expr object, Token name, Expr value) {
+			this.object = object;
+			this.name = name;
+			this.value = value;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitSetExpr(this);
+		}
+
+		final Expr object;
+		final Token name;
+		final Expr value;
+		// inline cache: slot and resulting shape of the last store into a shape seen here, weak
+		// like the one of Get.
+		WeakReference<Shape.Property> cache = null;
+	}
+
+	static class Super extends Expr {
+
+		Super(Token keyword, Token method) {
+			this.keyword = keyword;
+			this.method = method;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitSuperExpr(this);
+		}
+
+		final Token keyword;
+		final Token method;
+		// distance to the scope holding 'super', 'this' is one scope closer. Written by the Resolver.
+		int depth = -1;
+	}
+
+	static class This extends Expr {
+
+		This(Token keyword) {
+			this.keyword = keyword;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitThisExpr(this);
+		}
+
+		final Token keyword;
+		// distance to the method scope holding 'this'. Written once by the Resolver.
+		int depth = -1;
+	}
+
 	static class Unary extends Expr {
 
 		Unary(Token operator, Expr right) {
@@ -140,8 +221,13 @@ abstract class Expr {
 		}
 
 		final Token name;
+		// distance to the declaring scope, -1 for globals. Written once by the Resolver.
+		int depth = -1;
 	}
 
+	// times the node was executed, only counted by interpreters running with countHits.
+	// Plain increments: concurrent runs of a shared script may lose a few counts.
+	long hits = 0;
 
 	abstract <R> R accept(Visitor<R> visitor);
 }
@@ -0,0 +1,157 @@
+package com.ota.jlox;
+
+import java.util.Arrays;
+
+// A function `fun f(x) { return <expression>; }` whose expression only combines x, numbers and
+// variables holding numbers with + - * / and unary minus. It is evaluated over a whole array of
+// numbers, one block at a time with the Kernels, instead of calling the function per element.
+// Variables are read once, when compiled; the function cannot assign them.
+final class Formula {
+	private static final int BLOCK = 1024;
+
+	private final Node root;
+
+	private Formula(Node root) {
+		this.root = root;
+	}
+
+	// null when function is not such a function, or a variable it reads does not hold a number.
+	static Formula compile(Interpreter interpreter, LoxFunction function) {
+		Stmt.Function declaration = function.declaration;
+		if(function.isInitializer || declaration.params.size() != 1 || declaration.body.size() != 1) return null;
+		if(!(declaration.body.get(0) instanceof Stmt.Return)) return null;
+
+		Expr value = ((Stmt.Return)declaration.body.get(0)).value;
+		if(value == null) return null;
+		Node root = new Compiler(interpreter, function).compile(value);
+		return (root != null) ? new Formula(root) : null;
+	}
+
+	// f(in[i]) for the first length numbers of in.
+	double[] apply(double[] in, int length) {
+		double[] out = new double[Math.max(length, 4)];
+		double[] block = new double[Math.min(length, BLOCK)];
+		for(int from = 0; from < length; from += BLOCK) {
+			int count = Math.min(BLOCK, length - from);
+			this.root.eval(in, from, count, block);
+			System.arraycopy(block, 0, out, from, count);
+		}
+		return out;
+	}
+
+	// writes the value for in[from + i] in out[i], for i below length.
+	private abstract static class Node {
+		abstract void eval(double[] in, int from, int length, double[] out);
+	}
+
+	private static final class Parameter extends Node {
+		@Override
+		void eval(double[] in, int from, int length, double[] out) {
+			System.arraycopy(in, from, out, 0, length);
+		}
+	}
+
+	// only a root on its own, Binary folds its constant operands.
+	private static final class Constant extends Node {
+		final double value;
+
+		Constant(double value) {
+			this.value = value;
+		}
+
+		@Override
+		void eval(double[] in, int from, int length, double[] out) {
+			Arrays.fill(out, 0, length, this.value);
+		}
+	}
+
+	private static final class Binary extends Node {
+		private final int op;
+		private final Node left;
+		private final Node right;
+		// the right operand of each block, when neither is constant.
+		private double[] scratch = null;
+
+		Binary(int op, Node left, Node right) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		void eval(double[] in, int from, int length, double[] out) {
+			Kernels kernels = Kernels.INSTANCE;
+			if(this.right instanceof Constant) {
+				this.left.eval(in, from, length, out);
+				kernels.apply(this.op, out, ((Constant)this.right).value, out, length);
+			} else if(this.left instanceof Constant) {
+				this.right.eval(in, from, length, out);
+				kernels.apply(this.op, ((Constant)this.left).value, out, out, length);
+			} else {
+				if(this.scratch == null) this.scratch = new double[out.length];
+				this.left.eval(in, from, length, out);
+				this.right.eval(in, from, length, this.scratch);
+				kernels.apply(this.op, out, this.scratch, out, length);
+			}
+		}
+	}
+
+	private static final class Compiler {
+		private final Interpreter interpreter;
+		private final LoxFunction function;
+		private final String parameter;
+
+		Compiler(Interpreter interpreter, LoxFunction function) {
+			this.interpreter = interpreter;
+			this.function = function;
+			this.parameter = function.declaration.params.get(0).lexeme;
+		}
+
+		Node compile(Expr expression) {
+			if(expression instanceof Expr.Grouping) {
+				return compile(((Expr.Grouping)expression).expression);
+			} else if(expression instanceof Expr.Literal) {
+				return constant(((Expr.Literal)expression).value);
+			} else if(expression instanceof Expr.Variable) {
+				return variable((Expr.Variable)expression);
+			} else if(expression instanceof Expr.Unary) {
+				Expr.Unary unary = (Expr.Unary)expression;
+				if(unary.operator.type != TokenType.MINUS) return null;
+				// -x is x * -1 bit for bit, including the sign of zeros.
+				return binary(Kernels.MULTIPLY, compile(unary.right), new Constant(-1.0));
+			} else if(expression instanceof Expr.Binary) {
+				Expr.Binary binary = (Expr.Binary)expression;
+				switch(binary.operator.type) {
+					case PLUS:  return binary(Kernels.ADD, compile(binary.left), compile(binary.right));
+					case MINUS: return binary(Kernels.SUBTRACT, compile(binary.left), compile(binary.right));
+					case STAR:  return binary(Kernels.MULTIPLY, compile(binary.left), compile(binary.right));
+					case SLASH: return binary(Kernels.DIVIDE, compile(binary.left), compile(binary.right));
+					default:    return null;
+				}
+			}
+			return null;
+		}
+
+		private Node binary(int op, Node left, Node right) {
+			if(left == null || right == null) return null;
+			if(left instanceof Constant && right instanceof Constant) {
+				return new Constant(Kernels.apply(op, ((Constant)left).value, ((Constant)right).value));
+			}
+			return new Binary(op, left, right);
+		}
+
+		// the parameter, or the current value of a variable of the closure.
+		private Node variable(Expr.Variable variable) {
+			if(variable.depth == 0) return variable.name.lexeme.equals(this.parameter) ? new Parameter() : null;
+
+			Object value;
+			if(variable.depth < 0) value = this.interpreter.globals.get(variable.name);
+			else value = this.function.closure.getAt(variable.depth - 1, variable.name.lexeme);
+			return constant(value);
+		}
+
+		private static Node constant(Object value) {
+			return Operators.isNumber(value) ? new Constant(Operators.toDouble(value)) : null;
+		}
+	}
+}
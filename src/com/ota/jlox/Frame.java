@@ -0,0 +1,110 @@
+package com.ota.jlox;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.charset.StandardCharsets;
+
+// Wire format shared by the Server and the Client: a one byte type, a four bytes length and the payload.
+// -Djlox.frame.maxBytes (64MB by default) bounds the payloads read, as the length comes from the peer.
+class Frame {
+	private static final int MAX_BYTES = Integer.getInteger("jlox.frame.maxBytes", 64 << 20);
+
+	static final byte FILE   = 'F';
+	static final byte SOURCE = 'S';
+	static final byte OUT    = 'O';
+	static final byte ERR    = 'E';
+	static final byte EXIT   = 'X';
+
+	final byte type;
+	final byte[] payload;
+
+	Frame(byte type, byte[] payload) {
+		this.type = type;
+		this.payload = payload;
+	}
+
+	String text() {
+		return new String(this.payload, StandardCharsets.UTF_8);
+	}
+
+	int status() {
+		return ByteBuffer.wrap(this.payload).getInt();
+	}
+
+	static void write(ByteChannel channel, byte type, byte[] payload) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(5 + payload.length);
+		buffer.put(type).putInt(payload.length).put(payload).flip();
+		synchronized(channel) {
+			while(buffer.hasRemaining()) channel.write(buffer);
+		}
+	}
+
+	static void write(ByteChannel channel, byte type, String text) throws IOException {
+		write(channel, type, text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	static void writeStatus(ByteChannel channel, int status) throws IOException {
+		write(channel, EXIT, ByteBuffer.allocate(4).putInt(status).array());
+	}
+
+	// returns null when the peer closed the connection between two frames.
+	static Frame read(ByteChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(5);
+		if(!fill(channel, header, true)) return null;
+		header.flip();
+
+		byte type = header.get();
+		int length = header.getInt();
+		if(length < 0 || length > MAX_BYTES) {
+			throw new IOException("Frame of " + length + " bytes, over the limit of " + MAX_BYTES + ".");
+		}
+		ByteBuffer payload = ByteBuffer.allocate(length);
+		fill(channel, payload, false);
+		return new Frame(type, payload.array());
+	}
+
+	private static boolean fill(ByteChannel channel, ByteBuffer buffer, boolean eofAllowed) throws IOException {
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer) >= 0) continue;
+			if(eofAllowed && buffer.position() == 0) return false;
+			throw new EOFException("Connection closed in the middle of a frame.");
+		}
+		return true;
+	}
+
+	// Writer sending every flushed chunk of text as one frame of the given type, and every CHUNK
+	// characters when not flushed before, so that buffering a whole run keeps the frames small.
+	static class Sink extends Writer {
+		private static final int CHUNK = 1 << 16;
+
+		private final ByteChannel channel;
+		private final byte type;
+		private final StringBuilder pending = new StringBuilder();
+
+		Sink(ByteChannel channel, byte type) {
+			this.channel = channel;
+			this.type = type;
+		}
+
+		@Override
+		public void write(char[] chars, int offset, int length) throws IOException {
+			this.pending.append(chars, offset, length);
+			if(this.pending.length() >= CHUNK) flush();
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if(this.pending.length() == 0) return;
+			Frame.write(this.channel, this.type, this.pending.toString());
+			this.pending.setLength(0);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
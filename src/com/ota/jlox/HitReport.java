@@ -0,0 +1,245 @@
+package com.ota.jlox;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+// Maps the execution counters of the nodes back to source lines, like a line coverage report
+// with frequencies, and lists the hottest expressions. Nodes without a token of their own
+// (blocks, literals, groupings) are attributed to the line of their parent.
+class HitReport implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+	private static final int HOTTEST = 20;
+
+	private static class Node {
+		final String kind;
+		final int line;
+		final long hits;
+
+		Node(String kind, int line, long hits) {
+			this.kind = kind;
+			this.line = line;
+			this.hits = hits;
+		}
+	}
+
+	private final String[] lines;
+	private final long[] lineHits;
+	private final List<Node> expressions = new ArrayList<>();
+	private int line = 1;
+
+	HitReport(String source) {
+		this.lines = source.split("\n", -1);
+		this.lineHits = new long[this.lines.length + 2];
+	}
+
+	void print(CompiledScript script, PrintWriter out) {
+		for(Stmt statement : script.statements) statement(statement, 1);
+
+		out.println("hits per line:");
+		for(int i = 0; i < this.lines.length; i++) {
+			String count = (this.lineHits[i+1] > 0) ? Long.toString(this.lineHits[i+1]) : "";
+			out.printf("%12s %5d | %s%n", count, i+1, this.lines[i]);
+		}
+
+		this.expressions.sort((a, b) -> Long.compare(b.hits, a.hits));
+		out.println();
+		out.println("hottest expressions:");
+		for(int i = 0; i < Math.min(HOTTEST, this.expressions.size()) && this.expressions.get(i).hits > 0; i++) {
+			Node node = this.expressions.get(i);
+			out.printf("%12d  line %-5d %s%n", node.hits, node.line, node.kind);
+		}
+		out.flush();
+	}
+
+	// a line counts as often as its most executed statement.
+	private void statement(Stmt statement, int line) {
+		if(statement == null) return;
+		int enclosing = this.line;
+		this.line = line;
+		statement.accept(this);
+		this.line = enclosing;
+	}
+
+	private void count(int line, Stmt statement) {
+		this.line = line;
+		this.lineHits[line] = Math.max(this.lineHits[line], statement.hits);
+	}
+
+	private void expression(Expr expression) {
+		int enclosing = this.line;
+		this.line = lineOf(expression);
+		this.expressions.add(new Node(describe(expression), this.line, expression.hits));
+		expression.accept(this);
+		this.line = enclosing;
+	}
+
+	private int lineOf(Expr expression) {
+		if(expression instanceof Expr.Variable) return ((Expr.Variable)expression).name.line;
+		if(expression instanceof Expr.Assign) return ((Expr.Assign)expression).name.line;
+		if(expression instanceof Expr.Binary) return ((Expr.Binary)expression).operator.line;
+		if(expression instanceof Expr.Logical) return ((Expr.Logical)expression).operator.line;
+		if(expression instanceof Expr.Unary) return ((Expr.Unary)expression).operator.line;
+		if(expression instanceof Expr.Call) return ((Expr.Call)expression).paren.line;
+		if(expression instanceof Expr.Get) return ((Expr.Get)expression).name.line;
+		if(expression instanceof Expr.Set) return ((Expr.Set)expression).name.line;
+		if(expression instanceof Expr.This) return ((Expr.This)expression).keyword.line;
+		if(expression instanceof Expr.Super) return ((Expr.Super)expression).keyword.line;
+		if(expression instanceof Expr.Grouping) return lineOf(((Expr.Grouping)expression).expression);
+		return this.line;
+	}
+
+	private static String describe(Expr expression) {
+		if(expression instanceof Expr.Binary) return "Binary '" + ((Expr.Binary)expression).operator.lexeme + "'";
+		if(expression instanceof Expr.Logical) return "Logical '" + ((Expr.Logical)expression).operator.lexeme + "'";
+		if(expression instanceof Expr.Unary) return "Unary '" + ((Expr.Unary)expression).operator.lexeme + "'";
+		if(expression instanceof Expr.Variable) return "Variable '" + ((Expr.Variable)expression).name.lexeme + "'";
+		if(expression instanceof Expr.Assign) return "Assign '" + ((Expr.Assign)expression).name.lexeme + "'";
+		if(expression instanceof Expr.Get) return "Get '" + ((Expr.Get)expression).name.lexeme + "'";
+		if(expression instanceof Expr.Set) return "Set '" + ((Expr.Set)expression).name.lexeme + "'";
+		return expression.getClass().getSimpleName();
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block block) {
+		for(Stmt statement : block.statements) statement(statement, this.line);
+		return null;
+	}
+
+	@Override
+	public Void visitClassStmt(Stmt.Class klass) {
+		count(klass.name.line, klass);
+		for(Stmt.Function method : klass.methods) statement(method, klass.name.line);
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression statement) {
+		count(lineOf(statement.expression), statement);
+		expression(statement.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function function) {
+		count(function.name.line, function);
+		for(Stmt statement : function.body) statement(statement, function.name.line);
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If statement) {
+		count(lineOf(statement.condition), statement);
+		expression(statement.condition);
+		statement(statement.thenBranch, this.line);
+		statement(statement.elseBranch, this.line);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print statement) {
+		count(lineOf(statement.expression), statement);
+		expression(statement.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return statement) {
+		count(statement.keyword.line, statement);
+		if(statement.value != null) expression(statement.value);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var statement) {
+		count(statement.name.line, statement);
+		if(statement.initializer != null) expression(statement.initializer);
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While statement) {
+		count(lineOf(statement.condition), statement);
+		expression(statement.condition);
+		statement(statement.body, this.line);
+		return null;
+	}
+
+	@Override
+	public Void visitYieldStmt(Stmt.Yield statement) {
+		count(statement.keyword.line, statement);
+		if(statement.value != null) expression(statement.value);
+		return null;
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign assignment) {
+		expression(assignment.value);
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary binary) {
+		expression(binary.left);
+		expression(binary.right);
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call call) {
+		expression(call.callee);
+		for(Expr argument : call.arguments) expression(argument);
+		return null;
+	}
+
+	@Override
+	public Void visitGetExpr(Expr.Get get) {
+		expression(get.object);
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping group) {
+		expression(group.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal literal) {
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical logical) {
+		expression(logical.left);
+		expression(logical.right);
+		return null;
+	}
+
+	@Override
+	public Void visitSetExpr(Expr.Set set) {
+		expression(set.object);
+		expression(set.value);
+		return null;
+	}
+
+	@Override
+	public Void visitSuperExpr(Expr.Super expression) {
+		return null;
+	}
+
+	@Override
+	public Void visitThisExpr(Expr.This expression) {
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary unary) {
+		expression(unary.right);
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable variable) {
+		return null;
+	}
+}
@@ -1,44 +1,185 @@
 package com.ota.jlox;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
-	public final Environment globals = new Environment();
-	private Environment environment = globals;
-	private final Map<Expr, Integer> locals = new HashMap<>();
-
-	Interpreter() {
-		globals.define("clock", new LoxCallable() {
-			@Override
-			public int arity() { return 0; }
+	final Session session;
+	public final Environment globals;
+	private Environment environment;
+	// set while running under --profile, null otherwise.
+	Profiler profiler = null;
+	// set while running under --hits, counts the executions of every node.
+	boolean countHits = false;
+	// declaration of the function being executed, null at the top level.
+	Stmt.Function function = null;
+	// value of the last return statement executed by compiled code, see ClosureCompiler.Code.
+	Object returned = null;
+	// limits of the current run, null when unlimited.
+	Budget budget = null;
+	// files opened by the script and not closed yet.
+	private final Set<LoxFile> files = new HashSet<>();
+	// tasks spawned during the run by this interpreter and the ones of its tasks.
+	private final Queue<Task> tasks;
+
+	Interpreter(Session session) {
+		this(session, new Environment());
+		Natives.define(this.globals);
+	}
 
-			@Override
-			public Object call(Interpreter interpreter, List<Object> arguments) {
-				return (double)System.currentTimeMillis() / 1000.0;
-			}
+	// the natives are left to the caller, e.g. in an environment enclosing globals.
+	Interpreter(Session session, Environment globals) {
+		this.session = session;
+		this.globals = globals;
+		this.environment = globals;
+		this.tasks = new ConcurrentLinkedQueue<>();
+	}
 
-			@Override
-			public String toString() { return "<native fn>"; }
-		});
+	// the interpreter of a task spawned by parent, over the same globals and limits.
+	Interpreter(Interpreter parent) {
+		this.session = parent.session;
+		this.globals = parent.globals;
+		this.environment = parent.globals;
+		this.countHits = parent.countHits;
+		this.budget = parent.budget;
+		this.tasks = parent.tasks;
 	}
 
 	public void interpret(List<Stmt> statements) {
 		try {
-			for(Stmt statement : statements) {
-				execute(statement);
+			run(statements);
+		} catch(RuntimeError error) {
+			this.session.runtimeError(error);
+		}
+	}
+
+	// without a function each, the statements run once per line with the line in the global `line`
+	// and its number in `nr`. With one, they run once, then each(line) is called per line and
+	// end() after the last one, when declared.
+	void interpretLines(List<Stmt> statements, Lines lines) throws IOException {
+		try {
+			Stmt.Function each = declaration(statements, "each");
+			if(each == null) {
+				long number = 0;
+				for(CharSequence line = lines.readLine(); line != null; line = lines.readLine()) {
+					this.globals.define("line", line);
+					this.globals.define("nr", ++number);
+					run(statements);
+				}
+				return;
 			}
+
+			run(statements);
+			Object function = this.globals.getAt(0, "each");
+			for(CharSequence line = lines.readLine(); line != null; line = lines.readLine()) {
+				call(each.name, function, Arrays.asList(line));
+			}
+			Stmt.Function end = declaration(statements, "end");
+			if(end != null) call(end.name, this.globals.getAt(0, "end"), new ArrayList<>());
 		} catch(RuntimeError error) {
-			Main.runtimeError(error);
+			this.session.runtimeError(error);
+		}
+	}
+
+	private static Stmt.Function declaration(List<Stmt> statements, String name) {
+		for(Stmt statement : statements) {
+			if(statement instanceof Stmt.Function && ((Stmt.Function)statement).name.lexeme.equals(name)) {
+				return (Stmt.Function)statement;
+			}
+		}
+		return null;
+	}
+
+	// accounting of the current run, null when disabled.
+	Memory memory() {
+		return this.globals.memory;
+	}
+
+	Task spawned(Task task) {
+		this.tasks.add(task);
+		task.start();
+		return task;
+	}
+
+	// waits for the tasks of the run, including the ones they spawn meanwhile, and reports the
+	// errors nobody joined.
+	void awaitTasks() {
+		for(Task task = this.tasks.poll(); task != null; task = this.tasks.poll()) {
+			Throwable failure;
+			try {
+				failure = task.finish(this);
+			} catch(Natives.Error error) {
+				failure = error;
+			}
+			if(failure instanceof RuntimeError) {
+				this.session.runtimeError((RuntimeError)failure);
+			} else if(failure != null) {
+				String message = (failure instanceof Natives.Error) ? failure.getMessage() : failure.toString();
+				this.session.out.flush();
+				this.session.err.println("Task failed: " + message);
+				this.session.hadRuntimeError = true;
+			}
+		}
+	}
+
+	LoxFile opened(LoxFile file) {
+		this.files.add(file);
+		return file;
+	}
+
+	void closed(LoxFile file) {
+		this.files.remove(file);
+	}
+
+	// closes the files left open, writing what is buffered.
+	void closeFiles() {
+		for(LoxFile file : this.files) {
+			try {
+				file.close();
+			} catch(IOException error) {
+				this.session.err.println("Could not close " + file + ": " + error.getMessage());
+			}
 		}
+		this.files.clear();
+	}
+
+	// same as interpret but lets the RuntimeError reach the caller.
+	void run(List<Stmt> statements) {
+		for(Stmt statement : statements) {
+			execute(statement);
+		}
+	}
+
+	// runs statements like run, returning the value of the last one when it is an expression
+	// statement and nil otherwise, the result of the script engine eval.
+	Object runForValue(List<Stmt> statements) {
+		int last = statements.size() - 1;
+		if(last < 0 || !(statements.get(last) instanceof Stmt.Expression)) {
+			run(statements);
+			return null;
+		}
+
+		for(int i = 0; i < last; i++) {
+			execute(statements.get(i));
+		}
+		Stmt.Expression tail = (Stmt.Expression)statements.get(last);
+		if(Metrics.ENABLED) Metrics.statements.increment();
+		if(this.countHits) tail.hits++;
+		return evaluate(tail.expression);
 	}
 
 	@Override
 	public Void visitIfStmt(Stmt.If If) {
-		if(isTruthy(evaluate(If.condition))) {
+		if(Operators.isTruthy(evaluate(If.condition))) {
 			execute(If.thenBranch);
 		} else if(If.elseBranch != null) {
 			execute(If.elseBranch);
@@ -48,22 +189,73 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitWhileStmt(Stmt.While While) {
-		while(isTruthy(evaluate(While.condition))) {
+		while(Operators.isTruthy(evaluate(While.condition))) {
 			execute(While.body);
+			if(this.budget != null) this.budget.tick(While.keyword);
+			if(Tiering.ENABLED) {
+				if(this.function != null) Tiering.tick(this, this.function);
+				ClosureCompiler.Code compiled = Tiering.backEdge(this, While);
+				if(compiled != null) {
+					enterCompiledLoop(compiled);
+					return null;
+				}
+			}
 		}
 		return null;
 	}
 
+	// on-stack replacement: the compiled loop goes on from the next condition check with the
+	// same live environment.
+	private void enterCompiledLoop(ClosureCompiler.Code compiled) {
+		if(compiled.run(this, this.environment)) {
+			Object value = this.returned;
+			this.returned = null;
+			throw new Return(value);
+		}
+	}
+
+	// only reached for a yield the Resolver rejected, generators step through their yields.
+	@Override
+	public Void visitYieldStmt(Stmt.Yield statement) {
+		throw new RuntimeError(statement.keyword, "Can't yield outside of a generator.");
+	}
+
 	@Override
 	public Void visitBlockStmt(Stmt.Block block) {
 		executeBlock(block.statements, new Environment(environment));
 		return null;
 	}
 
+	@Override
+	public Void visitClassStmt(Stmt.Class klass) {
+		LoxClass superclass = null;
+		if(klass.superclass != null) {
+			Object value = evaluate(klass.superclass);
+			if(!(value instanceof LoxClass)) throw new RuntimeError(klass.superclass.name, "Superclass must be a class.");
+			superclass = (LoxClass)value;
+		}
+
+		environment.define(klass.name, null);
+
+		Environment closure = environment;
+		if(superclass != null) {
+			closure = new Environment(environment);
+			closure.define("super", superclass);
+		}
+
+		Map<String, LoxFunction> methods = new HashMap<>();
+		for(Stmt.Function method : klass.methods) {
+			methods.put(method.name.lexeme, new LoxFunction(method, closure, method.name.lexeme.equals("init")));
+		}
+
+		environment.define(klass.name, new LoxClass(klass.name.lexeme, superclass, methods));
+		return null;
+	}
+
 	@Override
 	public Void visitFunctionStmt(Stmt.Function functionStmt) {
 		LoxFunction function = new LoxFunction(functionStmt, environment);
-		environment.define(functionStmt.name.lexeme, function);
+		environment.define(functionStmt.name, function);
 		return null;
 	}
 
@@ -77,7 +269,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitVarStmt(Stmt.Var variable) {
 		Object value = (variable.initializer == null) ? null : evaluate(variable.initializer);
-		environment.define(variable.name.lexeme, value);
+		environment.define(variable.name, value);
 		return null;
 	}
 
@@ -90,21 +282,20 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitPrintStmt(Stmt.Print print) {
 		Object value = evaluate(print.expression);
-		System.out.println(stringify(value));
+		this.session.out.println(stringify(value));
 		return null;
 	}
 
 	@Override
 	public Object visitVariableExpr(Expr.Variable variable) {
-		return lookupVariable(variable.name, variable);
+		return lookupVariable(variable.name, variable.depth);
 	}
 
 	@Override
 	public Object visitAssignExpr(Expr.Assign assignment) {
 		Object value = evaluate(assignment.value);
-		Integer distance = locals.get(assignment);
-		if(distance != null) {
-			environment.assignAt(distance, assignment.name, assignment);
+		if(assignment.depth >= 0) {
+			environment.assignAt(assignment.depth, assignment.name, value);
 		} else {
 			globals.assign(assignment.name, value);
 		}
@@ -123,18 +314,83 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Object visitCallExpr(Expr.Call call) {
+		if(call.callee instanceof Expr.Get) return invoke(call, (Expr.Get)call.callee);
+
 		Object callee = evaluate(call.callee);
+		return call(call.paren, callee, arguments(call));
+	}
+
+	// `object.name(...)`: a method is invoked with the instance as receiver, without a bound method.
+	private Object invoke(Expr.Call call, Expr.Get get) {
+		if(this.countHits) get.hits++;
+		Object object = evaluate(get.object);
+		if(object instanceof LoxInstance) {
+			LoxInstance instance = (LoxInstance)object;
+			LoxFunction method = instance.method(get);
+			if(method != null) return invoke(call.paren, method, instance, arguments(call));
+			return call(call.paren, instance.get(get), arguments(call));
+		}
+		throw new RuntimeError(get.name, "Only instances have properties.");
+	}
+
+	private List<Object> arguments(Expr.Call call) {
 		List<Object> arguments = new ArrayList<>();
 		for(Expr argument : call.arguments) {
 			arguments.add(evaluate(argument));
 		}
+		return arguments;
+	}
 
-		if(!(callee instanceof LoxCallable)) throw new RuntimeError(call.paren, "Can only call functions and classes.");
+	Object call(Token paren, Object callee, List<Object> arguments) {
+		if(!(callee instanceof LoxCallable)) throw new RuntimeError(paren, "Can only call functions and classes.");
 
 		LoxCallable function = (LoxCallable)callee;
-		if(arguments.size() != function.arity()) throw new RuntimeError(call.paren, "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
+		if(arguments.size() != function.arity()) throw new RuntimeError(paren, "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
+
+		try {
+			return function.call(this, arguments);
+		} catch(Natives.Error error) {
+			throw new RuntimeError(paren, error.getMessage());
+		}
+	}
+
+	Object invoke(Token paren, LoxFunction method, LoxInstance receiver, List<Object> arguments) {
+		if(arguments.size() != method.arity()) throw new RuntimeError(paren, "Expected " + method.arity() + " arguments but got " + arguments.size() + ".");
+
+		return method.invoke(this, receiver, arguments);
+	}
+
+	@Override
+	public Object visitGetExpr(Expr.Get get) {
+		Object object = evaluate(get.object);
+		if(object instanceof LoxInstance) return ((LoxInstance)object).get(get);
+
+		throw new RuntimeError(get.name, "Only instances have properties.");
+	}
+
+	@Override
+	public Object visitSetExpr(Expr.Set set) {
+		Object object = evaluate(set.object);
+		if(!(object instanceof LoxInstance)) throw new RuntimeError(set.name, "Only instances have fields.");
+
+		Object value = evaluate(set.value);
+		((LoxInstance)object).set(set, value);
+		return value;
+	}
+
+	@Override
+	public Object visitSuperExpr(Expr.Super expression) {
+		LoxClass superclass = (LoxClass)environment.getAt(expression.depth, "super");
+		LoxInstance instance = (LoxInstance)environment.getAt(expression.depth - 1, "this");
+		LoxFunction method = superclass.findMethod(expression.method.lexeme);
+		if(method == null) throw new RuntimeError(expression.method, "Undefined property '" + expression.method.lexeme + "'.");
+
+		return method.bind(instance);
+	}
 
-		return function.call(this, arguments);
+	@Override
+	public Object visitThisExpr(Expr.This expression) {
+		return environment.getAt(expression.depth, "this");
 	}
 
 	@Override
@@ -142,12 +398,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		Object value = evaluate(unary.right);
 
 		switch(unary.operator.type) {
-			case BANG:
-				return !isTruthy(value);
-
-			case MINUS:
-				checkNumberOperand(unary.operator, value);
-				return -(double)value;
+			case BANG: return !Operators.isTruthy(value);
+			case MINUS: return Operators.negate(unary.operator, value);
 			default:
 				break;
 		}
@@ -161,41 +413,18 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		Object right = evaluate(binary.right);
 
 		switch(binary.operator.type) {
-			case MINUS:
-				checkNumberOperands(binary.operator, left, right);
-				return (double)left - (double)right;
-			case SLASH:
-				checkNumberOperands(binary.operator, left, right);
-				return (double)left / (double)right;
-			case STAR:
-				checkNumberOperands(binary.operator, left, right);
-				return (double)left * (double)right;
-			case PLUS:
-				if(left instanceof Double && right instanceof Double)
-					return (double)left + (double)right;
-
-				if(left instanceof String && right instanceof String)
-					return (String)left + (String)right;
-
-				throw new RuntimeError(binary.operator, "Operands must be two numbers or two strings.");
-
-			case GREATER:
-				checkNumberOperands(binary.operator, left, right);
-				return (double)left > (double)right;
-			case GREATER_EQUAL:
-				checkNumberOperands(binary.operator, left, right);
-				return (double)left >= (double)right;
-			case LESS:
-				checkNumberOperands(binary.operator, left, right);
-				return (double)left < (double)right;
-			case LESS_EQUAL:
-				checkNumberOperands(binary.operator, left, right);
-				return (double)left <= (double)right;
-
-			case BANG_EQUAL:
-				return !isEqual(left, right);
-			case EQUAL_EQUAL:
-				return isEqual(left, right);
+			case MINUS: return Operators.subtract(binary.operator, left, right);
+			case SLASH: return Operators.divide(binary.operator, left, right);
+			case STAR: return Operators.multiply(binary.operator, left, right);
+			case PLUS: return Operators.add(binary.operator, left, right);
+
+			case GREATER: return Operators.greater(binary.operator, left, right);
+			case GREATER_EQUAL: return Operators.greaterEqual(binary.operator, left, right);
+			case LESS: return Operators.less(binary.operator, left, right);
+			case LESS_EQUAL: return Operators.lessEqual(binary.operator, left, right);
+
+			case BANG_EQUAL: return !Operators.isEqual(left, right);
+			case EQUAL_EQUAL: return Operators.isEqual(left, right);
 			default:
 				break;
 		}
@@ -207,14 +436,16 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	public Object visitLogicalExpr(Expr.Logical logical) {
 		Object left = evaluate(logical.left);
 		if(logical.operator.type == TokenType.OR) {
-			if(isTruthy(left)) return left;
+			if(Operators.isTruthy(left)) return left;
 		} else {
-			if(!isTruthy(left)) return left;
+			if(!Operators.isTruthy(left)) return left;
 		}
 		return evaluate(logical.right);
 	}
 
 	private void execute(Stmt statement) {
+		if(Metrics.ENABLED) Metrics.statements.increment();
+		if(this.countHits) statement.hits++;
 		statement.accept(this);
 	}
 
@@ -227,58 +458,66 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			}
 		} finally {
 			environment = previous;
+			if(env.memory != null) env.release();
 		}
 	}
 
-	private Object evaluate(Expr expression) {
-		return expression.accept(this);
-	}
-
-	private boolean isTruthy(Object value) {
-		if(value == null) return false;
-		if(value instanceof Boolean) return (boolean)value;
-		return true;
-	}
-
-	private boolean isEqual(Object left, Object right) {
-		if(left == null && right == null) return true;
-		if(left == null) return false;
-
-		return left.equals(right);
+	// a single statement or expression in env, for LoxGenerator.
+	void execute(Stmt statement, Environment env) {
+		Environment previous = environment;
+		try {
+			environment = env;
+			execute(statement);
+		} finally {
+			environment = previous;
+		}
 	}
 
-	private void checkNumberOperand(Token operator, Object operand) {
-		if(operand instanceof Double) return;
-		throw new RuntimeError(operator, "Operand must be a number.");
+	Object evaluate(Expr expression, Environment env) {
+		Environment previous = environment;
+		try {
+			environment = env;
+			return evaluate(expression);
+		} finally {
+			environment = previous;
+		}
 	}
 
-	private void checkNumberOperands(Token operator, Object left, Object right) {
-		if(right instanceof Double && left instanceof Double) return;
-		throw new RuntimeError(operator, "Operands must be number.");
+	private Object evaluate(Expr expression) {
+		if(this.countHits) expression.hits++;
+		return expression.accept(this);
 	}
 
-	private String stringify(Object obj) {
+	static String stringify(Object obj) {
 		if(obj == null) return "nil";
 
-		if(obj instanceof Double) {
-			String text = obj.toString();
-			return (!text.endsWith(".0")) ? text : text.substring(0, text.length()-2);
+		if(obj instanceof Long) {
+			long number = (long)obj;
+			if(number > -1e7 && number < 1e7) return Long.toString(number);
+			return stringify((double)number);
 		}
+		if(obj instanceof Double) return stringify((double)obj);
 
 		return obj.toString();
 	}
 
-	private Object lookupVariable(Token name, Expr expression) {
-		Integer distance = locals.get(expression);
-		if(distance != null) {
-			return environment.getAt(distance, name.lexeme);
-		} else {
-			return globals.get(name);
+	// integral values below 1e7 are the only ones Double.toString prints with a ".0" to strip,
+	// larger ones use the exponent form. They are formatted as longs, without the shortest
+	// decimal search and the substring.
+	static String stringify(double number) {
+		if(number == (long)number && number > -1e7 && number < 1e7) {
+			if(number == 0 && Double.doubleToRawLongBits(number) != 0) return "-0";
+			return Long.toString((long)number);
 		}
+		return Double.toString(number);
 	}
 
-	public void resolve(Expr expression, int depth) {
-		this.locals.put(expression, depth);
+	private Object lookupVariable(Token name, int depth) {
+		if(depth >= 0) {
+			return environment.getAt(depth, name.lexeme);
+		} else {
+			return globals.get(name);
+		}
 	}
 
 }
@@ -0,0 +1,114 @@
+package com.ota.jlox;
+
+// Loops over arrays of doubles behind the bulk natives of Library.Vectors. VectorKernels runs them
+// on SIMD lanes when it was compiled, from the vector source tree, and the jdk.incubator.vector
+// module is there (java --add-modules jdk.incubator.vector). Scalar runs them otherwise or with
+// -Djlox.vector=false. Sums may add the elements in any order.
+abstract class Kernels {
+	static final int ADD      = 0;
+	static final int SUBTRACT = 1;
+	static final int MULTIPLY = 2;
+	static final int DIVIDE   = 3;
+
+	static final Kernels INSTANCE = choose();
+
+	private static Kernels choose() {
+		boolean vector = Boolean.parseBoolean(System.getProperty("jlox.vector", "true"));
+		if(vector && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			// loaded by name, the class is missing from builds without the vector sources.
+			try {
+				return Class.forName("com.ota.jlox.VectorKernels").asSubclass(Kernels.class).getDeclaredConstructor().newInstance();
+			} catch(ReflectiveOperationException | LinkageError missing) {
+				// plain loops then.
+			}
+		}
+		return new Scalar();
+	}
+
+	abstract double sum(double[] a, int length);
+
+	abstract double dot(double[] a, double[] b, int length);
+
+	abstract double min(double[] a, int length);
+
+	abstract double max(double[] a, int length);
+
+	// out[i] = a[i] op b[i]
+	abstract void apply(int op, double[] a, double[] b, double[] out, int length);
+
+	// out[i] = a[i] op k
+	abstract void apply(int op, double[] a, double k, double[] out, int length);
+
+	// out[i] = k op b[i]
+	abstract void apply(int op, double k, double[] b, double[] out, int length);
+
+	static double apply(int op, double x, double y) {
+		switch(op) {
+			case ADD:      return x + y;
+			case SUBTRACT: return x - y;
+			case MULTIPLY: return x * y;
+			default:       return x / y;
+		}
+	}
+
+	static class Scalar extends Kernels {
+		@Override
+		double sum(double[] a, int length) {
+			double sum = 0;
+			for(int i = 0; i < length; i++) sum += a[i];
+			return sum;
+		}
+
+		@Override
+		double dot(double[] a, double[] b, int length) {
+			double sum = 0;
+			for(int i = 0; i < length; i++) sum += a[i] * b[i];
+			return sum;
+		}
+
+		@Override
+		double min(double[] a, int length) {
+			double min = Double.POSITIVE_INFINITY;
+			for(int i = 0; i < length; i++) min = Math.min(min, a[i]);
+			return min;
+		}
+
+		@Override
+		double max(double[] a, int length) {
+			double max = Double.NEGATIVE_INFINITY;
+			for(int i = 0; i < length; i++) max = Math.max(max, a[i]);
+			return max;
+		}
+
+		// one loop per operator, so that each of them stays simple enough for the JIT to unroll.
+		@Override
+		void apply(int op, double[] a, double[] b, double[] out, int length) {
+			switch(op) {
+				case ADD:      for(int i = 0; i < length; i++) out[i] = a[i] + b[i]; break;
+				case SUBTRACT: for(int i = 0; i < length; i++) out[i] = a[i] - b[i]; break;
+				case MULTIPLY: for(int i = 0; i < length; i++) out[i] = a[i] * b[i]; break;
+				default:       for(int i = 0; i < length; i++) out[i] = a[i] / b[i]; break;
+			}
+		}
+
+		@Override
+		void apply(int op, double[] a, double k, double[] out, int length) {
+			switch(op) {
+				case ADD:      for(int i = 0; i < length; i++) out[i] = a[i] + k; break;
+				case SUBTRACT: for(int i = 0; i < length; i++) out[i] = a[i] - k; break;
+				case MULTIPLY: for(int i = 0; i < length; i++) out[i] = a[i] * k; break;
+				default:       for(int i = 0; i < length; i++) out[i] = a[i] / k; break;
+			}
+		}
+
+		@Override
+		void apply(int op, double k, double[] b, double[] out, int length) {
+			switch(op) {
+				case ADD:      for(int i = 0; i < length; i++) out[i] = k + b[i]; break;
+				case SUBTRACT: for(int i = 0; i < length; i++) out[i] = k - b[i]; break;
+				case MULTIPLY: for(int i = 0; i < length; i++) out[i] = k * b[i]; break;
+				default:       for(int i = 0; i < length; i++) out[i] = k / b[i]; break;
+			}
+		}
+	}
+}
@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Map;
 
 class Lexer {
+	private final Session session;
 	private final String source;
 	private final List<Token> tokens = new ArrayList<>();
 	private int start = 0;
@@ -32,9 +33,11 @@ class Lexer {
 		keywords.put("true",   TokenType.TRUE);
 		keywords.put("var",    TokenType.VAR);
 		keywords.put("while",  TokenType.WHILE);
+		keywords.put("yield",  TokenType.YIELD);
 	}
 
-	Lexer(String source) {
+	Lexer(Session session, String source) {
+		this.session = session;
 		this.source = source;
 	}
 
@@ -101,7 +104,7 @@ class Lexer {
 				if(isAlpha(c)) {
 					identifier();
 				} else {
-					Main.error(line, "Unexpected character.");
+					this.session.error(line, "Unexpected character.");
 				}
 				break;
 		}
@@ -116,7 +119,7 @@ class Lexer {
 		}
 
 		if(isAtEnd()) {
-			Main.error(line, "Unterminated string.");
+			this.session.error(line, "Unterminated string.");
 			return;
 		}
 
@@ -139,7 +142,7 @@ class Lexer {
 			while(c >= '0' && c <= '9') { advance(); c = peek(); }
 		}
 
-		addToken(TokenType.NUMBER, Double.parseDouble(source.substring(this.start, this.current)));
+		addToken(TokenType.NUMBER, Operators.number(Double.parseDouble(source.substring(this.start, this.current))));
 	}
 
 	private void identifier() {
@@ -0,0 +1,373 @@
+package com.ota.jlox;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+// The native functions defined in every interpreter, see Natives.
+class Library {
+	static class Collections {
+		// array(length): a new array of length zeros.
+		@Native
+		static LoxArray array(Interpreter interpreter, long length) {
+			if(length < 0 || length > Integer.MAX_VALUE - 8) throw new Natives.Error("Array length must be a non negative integer.");
+			return new LoxArray(interpreter.memory(), (int)length);
+		}
+
+		@Native
+		static LoxMap map(Interpreter interpreter) {
+			return new LoxMap(interpreter.memory());
+		}
+
+		// of an array, a map or a string.
+		@Native
+		static long length(Object value) {
+			if(value instanceof LoxArray) return ((LoxArray)value).length();
+			if(value instanceof LoxMap) return ((LoxMap)value).size();
+			if(value instanceof CharSequence) return ((CharSequence)value).length();
+			throw new Natives.Error("Operand must be an array, a map or a string.");
+		}
+
+		// get(map, key) is nil for a missing key.
+		@Native
+		static Object get(Object collection, Object key) {
+			if(collection instanceof LoxMap) return ((LoxMap)collection).get(key);
+			LoxArray array = array(collection);
+			return array.get(index(array, key));
+		}
+
+		// set(collection, index or key, value) returns value, like an assignment.
+		@Native
+		static Object set(Object collection, Object key, Object value) {
+			if(collection instanceof LoxMap) {
+				((LoxMap)collection).set(key, value);
+			} else {
+				LoxArray array = array(collection);
+				array.set(index(array, key), value);
+			}
+			return value;
+		}
+
+		// push(array, value) appends value and returns the new length.
+		@Native
+		static long push(LoxArray array, Object value) {
+			array.push(value);
+			return array.length();
+		}
+
+		@Native
+		static boolean has(LoxMap map, Object key) {
+			return map.has(key);
+		}
+
+		// delete(map, key) tells whether the key was there.
+		@Native
+		static boolean delete(LoxMap map, Object key) {
+			return map.delete(key);
+		}
+
+		// keys(map): an array of the keys, to iterate over the map.
+		@Native
+		static LoxArray keys(Interpreter interpreter, LoxMap map) {
+			return map.keys(interpreter.memory());
+		}
+
+		private static LoxArray array(Object collection) {
+			if(collection instanceof LoxArray) return (LoxArray)collection;
+			throw new Natives.Error("Operand must be an array or a map.");
+		}
+
+		// integral numbers are Longs, a Double index has a fraction or is too large.
+		private static int index(LoxArray array, Object value) {
+			if(!(value instanceof Long)) throw new Natives.Error("Array index must be an integer.");
+			long index = (long)value;
+			if(index < 0 || index >= array.length()) {
+				throw new Natives.Error("Array index " + index + " out of bounds for length " + array.length() + ".");
+			}
+			return (int)index;
+		}
+	}
+
+	static class Maths {
+		@Native static double sqrt(double x) { return Math.sqrt(x); }
+		@Native static double abs(double x) { return Math.abs(x); }
+		@Native static double floor(double x) { return Math.floor(x); }
+		@Native static double ceil(double x) { return Math.ceil(x); }
+		@Native static double trunc(double x) { return (x < 0) ? Math.ceil(x) : Math.floor(x); }
+		@Native static double pow(double x, double y) { return Math.pow(x, y); }
+		@Native static double min(double x, double y) { return Math.min(x, y); }
+		@Native static double max(double x, double y) { return Math.max(x, y); }
+		@Native static double exp(double x) { return Math.exp(x); }
+		@Native static double log(double x) { return Math.log(x); }
+		@Native static double sin(double x) { return Math.sin(x); }
+		@Native static double cos(double x) { return Math.cos(x); }
+		@Native static double tan(double x) { return Math.tan(x); }
+		@Native static double atan2(double y, double x) { return Math.atan2(y, x); }
+		@Native static double random() { return Math.random(); }
+
+		// the nearest integer, halves rounded up.
+		@Native
+		static double round(double x) {
+			if(Math.abs(x) < 0x1p53) return Math.round(x);
+			return x;
+		}
+
+		// remainder of x / y, with the sign of x.
+		@Native
+		static double mod(double x, double y) {
+			return x % y;
+		}
+	}
+
+	static class Strings {
+		@Native
+		static String str(Object value) {
+			return Interpreter.stringify(value);
+		}
+
+		// the number written in text, nil when it is not one.
+		@Native
+		static Object num(String text) {
+			try {
+				return Operators.number(Double.parseDouble(text.trim()));
+			} catch(NumberFormatException error) {
+				return null;
+			}
+		}
+
+		@Native
+		static String substring(String text, int start, int end) {
+			return text.substring(start, end);
+		}
+
+		// -1 when part is not in text.
+		@Native
+		static long indexOf(String text, String part) {
+			return text.indexOf(part);
+		}
+
+		@Native static String upper(String text) { return text.toUpperCase(); }
+		@Native static String lower(String text) { return text.toLowerCase(); }
+		@Native static String trim(String text) { return text.trim(); }
+
+		@Native
+		static String replace(String text, String target, String replacement) {
+			return text.replace(target, replacement);
+		}
+
+		@Native
+		static LoxArray split(Interpreter interpreter, String text, String separator) {
+			LoxArray parts = new LoxArray(interpreter.memory(), 0);
+			for(String part : text.split(Pattern.quote(separator), -1)) parts.push(part);
+			return parts;
+		}
+
+		@Native
+		static String join(LoxArray parts, String separator) {
+			StringBuilder text = new StringBuilder();
+			for(int i = 0; i < parts.length(); i++) {
+				if(i > 0) text.append(separator);
+				text.append(Interpreter.stringify(parts.get(i)));
+			}
+			return text.toString();
+		}
+	}
+
+	static class Time {
+		private static final long ORIGIN = System.nanoTime();
+
+		// seconds since the epoch.
+		@Native
+		static double clock() {
+			return (double)System.currentTimeMillis() / 1000.0;
+		}
+
+		// nanoseconds since the start of the process, to time code. Exact for 104 days.
+		@Native
+		static long nanoTime() {
+			return System.nanoTime() - ORIGIN;
+		}
+	}
+
+	// bulk operations over arrays of numbers, see Kernels.
+	static class Vectors {
+		@Native
+		static double sum(LoxArray array) {
+			return Kernels.INSTANCE.sum(numbers(array), array.length());
+		}
+
+		@Native
+		static double dot(LoxArray a, LoxArray b) {
+			sameLength(a, b);
+			return Kernels.INSTANCE.dot(numbers(a), numbers(b), a.length());
+		}
+
+		@Native
+		static double minimum(LoxArray array) {
+			nonEmpty(array);
+			return Kernels.INSTANCE.min(numbers(array), array.length());
+		}
+
+		@Native
+		static double maximum(LoxArray array) {
+			nonEmpty(array);
+			return Kernels.INSTANCE.max(numbers(array), array.length());
+		}
+
+		// scale(array, k): a new array of the elements times k.
+		@Native
+		static LoxArray scale(Interpreter interpreter, LoxArray array, double k) {
+			LoxArray result = new LoxArray(interpreter.memory(), array.length());
+			Kernels.INSTANCE.apply(Kernels.MULTIPLY, numbers(array), k, result.numbers(), array.length());
+			return result;
+		}
+
+		// add(a, b): a new array of the sums of the elements of a and b.
+		@Native
+		static LoxArray add(Interpreter interpreter, LoxArray a, LoxArray b) {
+			sameLength(a, b);
+			LoxArray result = new LoxArray(interpreter.memory(), a.length());
+			Kernels.INSTANCE.apply(Kernels.ADD, numbers(a), numbers(b), result.numbers(), a.length());
+			return result;
+		}
+
+		// transform(array, function): a new array of function(element) for every element. See Formula
+		// for the functions run without a call per element.
+		@Native
+		static LoxArray transform(Interpreter interpreter, LoxArray array, LoxCallable function) {
+			if(function.arity() != 1) throw new Natives.Error("Function must take one argument.");
+			int length = array.length();
+			if(length == 0) return new LoxArray(interpreter.memory(), 0);
+
+			double[] numbers = array.numbers();
+			if(numbers != null && function instanceof LoxFunction) {
+				Formula formula = Formula.compile(interpreter, (LoxFunction)function);
+				if(formula != null) return new LoxArray(interpreter.memory(), formula.apply(numbers, length), length);
+			}
+
+			LoxArray result = new LoxArray(interpreter.memory(), 0);
+			for(int i = 0; i < length; i++) {
+				result.push(function.call(interpreter, Arrays.asList(array.get(i))));
+			}
+			return result;
+		}
+
+		private static double[] numbers(LoxArray array) {
+			double[] numbers = array.numbers();
+			if(numbers == null) throw new Natives.Error("Operand must be an array of numbers.");
+			return numbers;
+		}
+
+		private static void sameLength(LoxArray a, LoxArray b) {
+			if(a.length() != b.length()) {
+				throw new Natives.Error("Arrays of lengths " + a.length() + " and " + b.length() + " differ.");
+			}
+		}
+
+		private static void nonEmpty(LoxArray array) {
+			if(array.length() == 0) throw new Natives.Error("Operand must be a non empty array.");
+		}
+	}
+
+	// files read line by line and written through a buffer, see LoxFile.
+	static class Files {
+		// open(path): the file, to read with readLine.
+		@Native
+		static LoxFile open(Interpreter interpreter, String path) {
+			try {
+				return interpreter.opened(LoxFile.reading(path));
+			} catch(IOException error) {
+				throw new Natives.Error("Could not open '" + path + "'.");
+			}
+		}
+
+		// create(path): the file emptied, to write with write and writeLine.
+		@Native
+		static LoxFile create(Interpreter interpreter, String path) {
+			try {
+				return interpreter.opened(LoxFile.writing(path));
+			} catch(IOException error) {
+				throw new Natives.Error("Could not create '" + path + "'.");
+			}
+		}
+
+		// the next line, nil at the end of the file.
+		@Native
+		static Object readLine(LoxFile file) throws IOException {
+			return file.readLine();
+		}
+
+		@Native
+		static void write(LoxFile file, Object value) throws IOException {
+			file.write(Interpreter.stringify(value));
+		}
+
+		@Native
+		static void writeLine(LoxFile file, Object value) throws IOException {
+			file.write(Interpreter.stringify(value) + "\n");
+		}
+	}
+
+	// iterating generators: `while(!done(g)) print next(g);`, see LoxGenerator.
+	static class Generators {
+		// the next yielded value, nil once the generator returned.
+		@Native
+		static Object next(Interpreter interpreter, LoxGenerator generator) {
+			return generator.next(interpreter);
+		}
+
+		// whether the generator returned, it runs up to its next yield to tell.
+		@Native
+		static boolean done(Interpreter interpreter, LoxGenerator generator) {
+			return generator.done(interpreter);
+		}
+	}
+
+	// functions running concurrently on virtual threads and the channels between them, see Task.
+	static class Tasks {
+		// spawn(function): calls function, which takes no argument, on a new task.
+		@Native
+		static Task spawn(Interpreter interpreter, LoxCallable function) {
+			if(function.arity() != 0) throw new Natives.Error("Function must take no arguments.");
+			return interpreter.spawned(new Task(interpreter, function));
+		}
+
+		// the value returned by the function of the task, once it has. An error of the task is
+		// raised again here. Not join, which joins strings.
+		@Native
+		static Object await(Interpreter interpreter, Task task) {
+			return task.join(interpreter);
+		}
+
+		// channel(capacity): a channel holding up to capacity values not received yet.
+		@Native
+		static Channel channel(long capacity) {
+			if(capacity < 1 || capacity > Integer.MAX_VALUE - 8) throw new Natives.Error("Channel capacity must be a positive integer.");
+			return new Channel((int)capacity);
+		}
+
+		// waits while the channel is full.
+		@Native
+		static void send(Interpreter interpreter, Channel channel, Object value) {
+			channel.send(interpreter, value);
+		}
+
+		// waits while the channel is empty, nil once it is closed and empty.
+		@Native
+		static Object receive(Interpreter interpreter, Channel channel) {
+			return channel.receive(interpreter);
+		}
+
+		// close(channel), or close(file) where Files is bound. Here as channels are always there.
+		@Native
+		static void close(Interpreter interpreter, Object value) throws IOException {
+			if(value instanceof Channel) {
+				((Channel)value).close();
+				return;
+			}
+			if(!(value instanceof LoxFile)) throw new Natives.Error("Operand must be a file or a channel.");
+			interpreter.closed((LoxFile)value);
+			((LoxFile)value).close();
+		}
+	}
+}
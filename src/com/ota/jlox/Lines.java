@@ -0,0 +1,217 @@
+package com.ota.jlox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+// Splits a stream of bytes into lines ending with \n or \r\n, the last one maybe without. Only a
+// window of the input is held at a time: regular files are memory mapped -Djlox.io.window bytes
+// at a time, other channels are read into a direct buffer that grows to hold the longest line.
+abstract class Lines {
+	static final int WINDOW = Integer.getInteger("jlox.io.window", 1 << 26);
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	// the unread bytes are the ones between position and limit.
+	ByteBuffer buffer;
+
+	Lines(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	static Lines mapped(FileChannel channel) throws IOException {
+		return new Mapped(channel);
+	}
+
+	static Lines streamed(ReadableByteChannel channel) {
+		return new Streamed(channel, 1 << 20);
+	}
+
+	// the next line without its end, null after the last one.
+	CharSequence readLine() throws IOException {
+		int from = this.buffer.position();
+		int scan = from;
+		while(true) {
+			ByteBuffer buffer = this.buffer;
+			int limit = buffer.limit();
+			int newline = indexOfNewline(buffer, scan, limit);
+			if(newline >= 0) {
+				buffer.position(newline + 1);
+				return line(from, newline);
+			}
+
+			int scanned = limit - from;
+			if(!more()) {
+				if(!this.buffer.hasRemaining()) return null;
+				from = this.buffer.position();
+				limit = this.buffer.limit();
+				this.buffer.position(limit);
+				return line(from, limit);
+			}
+			from = this.buffer.position();
+			scan = from + scanned;
+		}
+	}
+
+	private static final long LOWS = 0x7F7F7F7F7F7F7F7FL;
+	private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+
+	// eight bytes at a time: the bytes of the word xor the newlines are zero at the newlines, and
+	// only those keep the high bit clear below (no carry crosses bytes). Big endian words keep the
+	// bytes in order.
+	private static int indexOfNewline(ByteBuffer buffer, int from, int to) {
+		int i = from;
+		for(; i + 8 <= to; i += 8) {
+			long word = buffer.getLong(i) ^ NEWLINES;
+			long zeros = ~(((word & LOWS) + LOWS) | word | LOWS);
+			if(zeros != 0) return i + (Long.numberOfLeadingZeros(zeros) >>> 3);
+		}
+		for(; i < to; i++) {
+			if(buffer.get(i) == '\n') return i;
+		}
+		return -1;
+	}
+
+	private CharSequence line(int from, int to) {
+		if(to > from && this.buffer.get(to - 1) == '\r') to--;
+		return slice(from, to);
+	}
+
+	// moves the unread bytes to a buffer followed by more input, false at the end of the input.
+	abstract boolean more() throws IOException;
+
+	// the text of the bytes from, to of the buffer.
+	abstract CharSequence slice(int from, int to);
+
+	static String decode(ByteBuffer buffer, int from, int to) {
+		byte[] bytes = new byte[to - from];
+		buffer.get(from, bytes);
+		return new String(bytes, CHARSET);
+	}
+
+	private static final class Mapped extends Lines {
+		private final FileChannel channel;
+		private final long size;
+		// offset in the file of the first byte of the buffer.
+		private long start = 0;
+
+		Mapped(FileChannel channel) throws IOException {
+			super(ByteBuffer.allocate(0));
+			this.channel = channel;
+			this.size = channel.size();
+		}
+
+		// maps the next window from the first unread byte, twice as large when a line is longer.
+		@Override
+		boolean more() throws IOException {
+			long end = this.start + this.buffer.limit();
+			if(end >= this.size) return false;
+
+			long from = this.start + this.buffer.position();
+			long length = Math.min(this.size - from, Math.max(WINDOW, 2L * (end - from)));
+			if(length > Integer.MAX_VALUE) throw new IOException("Line longer than 2GB.");
+			this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+			this.start = from;
+			return true;
+		}
+
+		// lines share the mapped window until their text is first needed.
+		@Override
+		CharSequence slice(int from, int to) {
+			return new Slice(this.buffer, from, to);
+		}
+	}
+
+	private static final class Streamed extends Lines {
+		private final ReadableByteChannel channel;
+		private boolean ended = false;
+
+		Streamed(ReadableByteChannel channel, int size) {
+			super(ByteBuffer.allocateDirect(size).flip());
+			this.channel = channel;
+		}
+
+		@Override
+		boolean more() throws IOException {
+			if(this.ended) return false;
+
+			this.buffer.compact();
+			if(!this.buffer.hasRemaining()) {
+				ByteBuffer larger = ByteBuffer.allocateDirect(2 * this.buffer.capacity());
+				this.buffer = larger.put(this.buffer.flip());
+			}
+			int count;
+			do {
+				count = this.channel.read(this.buffer);
+			} while(count == 0);
+			this.buffer.flip();
+
+			if(count < 0) this.ended = true;
+			return !this.ended;
+		}
+
+		// the buffer is reused, lines are decoded right away.
+		@Override
+		CharSequence slice(int from, int to) {
+			return decode(this.buffer, from, to);
+		}
+	}
+
+	// Lox string over bytes of a mapped window, decoded on first use. Until then the line keeps
+	// the whole window alive.
+	static final class Slice implements CharSequence {
+		private ByteBuffer buffer;
+		private final int from;
+		private final int to;
+		private String text = null;
+
+		Slice(ByteBuffer buffer, int from, int to) {
+			this.buffer = buffer;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public String toString() {
+			String text = this.text;
+			if(text == null) {
+				text = decode(this.buffer, this.from, this.to);
+				this.text = text;
+				this.buffer = null;
+			}
+			return text;
+		}
+
+		@Override
+		public int length() {
+			return toString().length();
+		}
+
+		// the length of the line in bytes, an upper bound of its length known without decoding.
+		int bytes() {
+			return this.to - this.from;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return toString().charAt(index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return toString().subSequence(start, end);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Slice)) return false;
+			return toString().equals(other.toString());
+		}
+
+		@Override
+		public int hashCode() {
+			return toString().hashCode();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.ota.jlox;
+
+import java.util.Arrays;
+
+// Dense array of Lox values. It stores its elements unboxed in a double[] while they are all
+// numbers and moves them to an Object[] the first time anything else is stored. Numbers are
+// boxed back in their canonical form when read, see Operators.
+class LoxArray {
+	private double[] numbers;
+	private Object[] values = null;
+	private int size;
+
+	// accounting of the run which created the array, null when disabled.
+	private final Memory memory;
+	private Memory.Retained retained = null;
+
+	// an array of length zeros.
+	LoxArray(Memory memory, int length) {
+		this.memory = memory;
+		int capacity = Math.max(length, 4);
+		if(memory != null) this.retained = memory.allocate(this, Memory.COLLECTION + Memory.SLOT * capacity);
+		this.numbers = new double[capacity];
+		this.size = length;
+	}
+
+	// an array of the first length numbers, taking ownership of them.
+	LoxArray(Memory memory, double[] numbers, int length) {
+		this.memory = memory;
+		if(memory != null) this.retained = memory.allocate(this, Memory.COLLECTION + Memory.SLOT * numbers.length);
+		this.numbers = numbers;
+		this.size = length;
+	}
+
+	int length() {
+		return this.size;
+	}
+
+	// the unboxed elements, valid up to length(), or null once anything but a number was stored.
+	double[] numbers() {
+		return this.numbers;
+	}
+
+	Object get(int index) {
+		if(this.numbers != null) return Operators.number(this.numbers[index]);
+		return this.values[index];
+	}
+
+	void set(int index, Object value) {
+		if(this.numbers != null) {
+			if(value instanceof Long) {
+				this.numbers[index] = (long)value;
+				return;
+			} else if(value instanceof Double) {
+				this.numbers[index] = (double)value;
+				return;
+			}
+			promote();
+		}
+		this.values[index] = value;
+	}
+
+	void push(Object value) {
+		int capacity = (this.numbers != null) ? this.numbers.length : this.values.length;
+		if(this.size == capacity) {
+			if(this.memory != null) this.memory.grow(this.retained, Memory.SLOT * (Math.max(2 * capacity, 4) - capacity));
+			capacity = Math.max(2 * capacity, 4);
+			if(this.numbers != null) this.numbers = Arrays.copyOf(this.numbers, capacity);
+			else this.values = Arrays.copyOf(this.values, capacity);
+		}
+		this.size++;
+		set(this.size - 1, value);
+	}
+
+	private void promote() {
+		this.values = new Object[this.numbers.length];
+		for(int i = 0; i < this.size; i++) {
+			this.values[i] = Operators.number(this.numbers[i]);
+		}
+		this.numbers = null;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder("[");
+		for(int i = 0; i < this.size; i++) {
+			if(i > 0) text.append(", ");
+			text.append(Interpreter.stringify(get(i)));
+		}
+		return text.append("]").toString();
+	}
+}
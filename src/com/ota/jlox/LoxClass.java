@@ -0,0 +1,47 @@
+package com.ota.jlox;
+
+import java.util.List;
+import java.util.Map;
+
+class LoxClass implements LoxCallable {
+	final String name;
+	final LoxClass superclass;
+	final Map<String, LoxFunction> methods;
+	// shape of the instances without fields, each class has its own tree of shapes.
+	final Shape root = new Shape(this);
+	// most fields an instance got so far, sizes the array of the next instances.
+	int fieldCount = 0;
+
+	LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
+		this.name = name;
+		this.superclass = superclass;
+		this.methods = methods;
+	}
+
+	LoxFunction findMethod(String name) {
+		LoxFunction method = this.methods.get(name);
+		if(method != null) return method;
+		if(this.superclass != null) return this.superclass.findMethod(name);
+		return null;
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, List<Object> arguments) {
+		LoxInstance instance = new LoxInstance(this);
+		LoxFunction initializer = findMethod("init");
+		if(initializer != null) initializer.invoke(interpreter, instance, arguments);
+		return instance;
+	}
+
+	@Override
+	public int arity() {
+		LoxFunction initializer = findMethod("init");
+		if(initializer == null) return 0;
+		return initializer.arity();
+	}
+
+	@Override
+	public String toString() {
+		return this.name;
+	}
+}
@@ -0,0 +1,68 @@
+package com.ota.jlox;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// A file opened by a script, either to read its lines or to write text. The interpreter closes
+// the files left open at the end of every run.
+class LoxFile {
+	private final String path;
+	private final FileChannel channel;
+	// one of them is null.
+	private final Lines lines;
+	private final Output output;
+	private boolean closed = false;
+
+	private LoxFile(String path, FileChannel channel, Lines lines, Output output) {
+		this.path = path;
+		this.channel = channel;
+		this.lines = lines;
+		this.output = output;
+	}
+
+	static LoxFile reading(String path) throws IOException {
+		FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ);
+		return new LoxFile(path, channel, Lines.mapped(channel), null);
+	}
+
+	// truncates the file when it exists.
+	static LoxFile writing(String path) throws IOException {
+		FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.WRITE,
+			StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		return new LoxFile(path, channel, null, new Output(channel, Charset.defaultCharset(), Output.BUFFER_SIZE));
+	}
+
+	CharSequence readLine() throws IOException {
+		if(this.lines == null) throw new Natives.Error("File '" + this.path + "' is not open for reading.");
+		check();
+		return this.lines.readLine();
+	}
+
+	void write(String text) throws IOException {
+		if(this.output == null) throw new Natives.Error("File '" + this.path + "' is not open for writing.");
+		check();
+		this.output.write(text);
+	}
+
+	void close() throws IOException {
+		if(this.closed) return;
+		this.closed = true;
+		try {
+			if(this.output != null) this.output.flush();
+		} finally {
+			this.channel.close();
+		}
+	}
+
+	private void check() {
+		if(this.closed) throw new Natives.Error("File '" + this.path + "' is closed.");
+	}
+
+	@Override
+	public String toString() {
+		return "<file " + this.path + ">";
+	}
+}
@@ -3,26 +3,87 @@ package com.ota.jlox;
 import java.util.List;
 
 class LoxFunction implements LoxCallable {
-	private final Stmt.Function declaration;
-	private final Environment closure;
+	final Stmt.Function declaration;
+	final Environment closure;
+	final boolean isInitializer;
+	// instance bound to 'this', null for functions and for the methods held by a class.
+	private final LoxInstance receiver;
 
 	LoxFunction(Stmt.Function declaration, Environment closure) {
+		this(declaration, closure, false, null);
+	}
+
+	LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+		this(declaration, closure, isInitializer, null);
+	}
+
+	private LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer, LoxInstance receiver) {
 		this.declaration = declaration;
 		this.closure = closure;
+		this.isInitializer = isInitializer;
+		this.receiver = receiver;
+		if(closure.memory != null) closure.capture();
+	}
+
+	// the method as a value, e.g. `var f = instance.method;`.
+	LoxFunction bind(LoxInstance instance) {
+		return new LoxFunction(this.declaration, this.closure, this.isInitializer, instance);
 	}
 
 	@Override
 	public Object call(Interpreter interpreter, List<Object> arguments) {
+		return invoke(interpreter, this.receiver, arguments);
+	}
+
+	// 'this' is defined next to the parameters, the Resolver declares it in the method scope.
+	Object invoke(Interpreter interpreter, LoxInstance receiver, List<Object> arguments) {
+		if(Metrics.ENABLED) Metrics.calls.increment();
+		if(interpreter.budget != null) interpreter.budget.tick(this.declaration.name);
 		Environment environment = new Environment(this.closure);
+		if(receiver != null) environment.define("this", receiver);
 		for(int i = 0; i < this.declaration.params.size(); i++) {
-			environment.define(this.declaration.params.get(i).lexeme, arguments.get(i));
+			environment.define(this.declaration.params.get(i), arguments.get(i));
 		}
+		if(this.declaration.generator) return new LoxGenerator(this.declaration, environment);
+
+		if(Tiering.ENABLED) Tiering.tick(interpreter, this.declaration);
+		ClosureCompiler.Code compiled = interpreter.countHits ? null : this.declaration.compiled;
 
+		Stmt.Function caller = interpreter.function;
+		interpreter.function = this.declaration;
+		Profiler profiler = interpreter.profiler;
+		if(profiler != null) profiler.enter(this.declaration);
+		Events.Call event = new Events.Call();
+		event.begin();
 		try {
-			interpreter.executeBlock(this.declaration.body, environment);
+			if(compiled != null) {
+				boolean returned = compiled.run(interpreter, environment);
+				if(environment.memory != null) environment.release();
+				if(this.isInitializer) return receiver;
+				if(!returned) return null;
+				Object value = interpreter.returned;
+				interpreter.returned = null;
+				return value;
+			} else {
+				interpreter.executeBlock(this.declaration.body, environment);
+			}
 		} catch(Return value) {
+			if(this.isInitializer) return receiver;
 			return value.value;
+		} catch(StackOverflowError overflow) {
+			// reported like any runtime error, at the innermost call with stack left to do so.
+			throw new RuntimeError(this.declaration.name, "Stack overflow.");
+		} finally {
+			interpreter.function = caller;
+			if(profiler != null) profiler.exit();
+			event.end();
+			if(event.shouldCommit()) {
+				event.function = this.declaration.name.lexeme;
+				event.line = this.declaration.name.line;
+				event.commit();
+			}
 		}
+		if(this.isInitializer) return receiver;
 		return null;
 	}
 
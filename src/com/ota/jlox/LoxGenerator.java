@@ -0,0 +1,177 @@
+package com.ota.jlox;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// The value of a call to a function whose body yields. Every next(generator) runs the body up to
+// its next yield, on the thread of the caller. The statements that contain a yield (blocks, ifs and
+// loops, see Stmt.yields) are stepped through with an explicit stack of frames rather than the
+// Java stack, so a suspended generator is a few objects and no thread. The other statements run
+// as usual.
+class LoxGenerator {
+	private final Stmt.Function declaration;
+	private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+	// the value of the last yield, until next takes it.
+	private Object value = null;
+	private boolean ready = false;
+	// the state above is guarded by lock, tasks sharing a generator take turns. A lock rather than
+	// synchronized, which would pin the virtual thread of a task to its carrier for as long as the
+	// body runs. running tells a body calling next on its own generator, on the same thread.
+	private boolean running = false;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	LoxGenerator(Stmt.Function declaration, Environment environment) {
+		this.declaration = declaration;
+		this.frames.push(new Block(declaration.body, environment));
+	}
+
+	// runs the body up to the next yield when needed to know.
+	boolean done(Interpreter interpreter) {
+		this.lock.lock();
+		try {
+			if(!this.ready && !this.frames.isEmpty()) advance(interpreter);
+			return !this.ready;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	// the next value, nil once done.
+	Object next(Interpreter interpreter) {
+		this.lock.lock();
+		try {
+			if(done(interpreter)) return null;
+			Object value = this.value;
+			this.value = null;
+			this.ready = false;
+			return value;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void advance(Interpreter interpreter) {
+		if(this.running) throw new Natives.Error("Generator is already running.");
+		this.running = true;
+		Stmt.Function caller = interpreter.function;
+		interpreter.function = this.declaration;
+		try {
+			while(!this.frames.isEmpty()) {
+				Frame frame = this.frames.peek();
+				Stmt statement = frame.next(interpreter);
+				if(statement == null) {
+					this.frames.pop().exit();
+				} else if(step(interpreter, statement, frame.environment)) {
+					return;
+				}
+			}
+		} catch(Return done) {
+			finish();
+		} catch(RuntimeException error) {
+			finish();
+			throw error;
+		} finally {
+			this.running = false;
+			interpreter.function = caller;
+		}
+	}
+
+	// true when the statement yielded.
+	private boolean step(Interpreter interpreter, Stmt statement, Environment environment) {
+		if(!statement.yields) {
+			interpreter.execute(statement, environment);
+			return false;
+		}
+
+		if(interpreter.countHits) statement.hits++;
+		if(statement instanceof Stmt.Yield) {
+			Expr value = ((Stmt.Yield)statement).value;
+			this.value = (value != null) ? interpreter.evaluate(value, environment) : null;
+			this.ready = true;
+			return true;
+		} else if(statement instanceof Stmt.Block) {
+			this.frames.push(new Block(((Stmt.Block)statement).statements, new Environment(environment)));
+		} else if(statement instanceof Stmt.While) {
+			this.frames.push(new Loop((Stmt.While)statement, environment));
+		} else if(statement instanceof Stmt.If) {
+			Stmt.If branch = (Stmt.If)statement;
+			if(Operators.isTruthy(interpreter.evaluate(branch.condition, environment))) {
+				return step(interpreter, branch.thenBranch, environment);
+			} else if(branch.elseBranch != null) {
+				return step(interpreter, branch.elseBranch, environment);
+			}
+		}
+		return false;
+	}
+
+	// the environments of the suspended frames, see Environment.share.
+	void share() {
+		this.lock.lock();
+		try {
+			for(Frame frame : this.frames) frame.environment.share();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void finish() {
+		while(!this.frames.isEmpty()) this.frames.pop().exit();
+	}
+
+	@Override
+	public String toString() {
+		return "<generator " + this.declaration.name.lexeme + ">";
+	}
+
+	private abstract static class Frame {
+		final Environment environment;
+
+		Frame(Environment environment) {
+			this.environment = environment;
+		}
+
+		// the next statement to run, null when the frame is over.
+		abstract Stmt next(Interpreter interpreter);
+
+		void exit() {
+		}
+	}
+
+	private static final class Block extends Frame {
+		private final List<Stmt> statements;
+		private int index = 0;
+
+		Block(List<Stmt> statements, Environment environment) {
+			super(environment);
+			this.statements = statements;
+		}
+
+		@Override
+		Stmt next(Interpreter interpreter) {
+			return (this.index < this.statements.size()) ? this.statements.get(this.index++) : null;
+		}
+
+		@Override
+		void exit() {
+			if(this.environment.memory != null) this.environment.release();
+		}
+	}
+
+	private static final class Loop extends Frame {
+		private final Stmt.While loop;
+		private boolean started = false;
+
+		Loop(Stmt.While loop, Environment environment) {
+			super(environment);
+			this.loop = loop;
+		}
+
+		@Override
+		Stmt next(Interpreter interpreter) {
+			if(this.started && interpreter.budget != null) interpreter.budget.tick(this.loop.keyword);
+			this.started = true;
+			return Operators.isTruthy(interpreter.evaluate(this.loop.condition, this.environment)) ? this.loop.body : null;
+		}
+	}
+}
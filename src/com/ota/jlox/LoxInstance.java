@@ -0,0 +1,78 @@
+package com.ota.jlox;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+// Fields live in an array indexed by the slots of the instance Shape, read and written through
+// the inline caches of the get and set nodes.
+class LoxInstance {
+	private static final Object[] NO_FIELDS = new Object[0];
+
+	final LoxClass klass;
+	// volatile and written after the array it describes, so a thread seeing a shape also sees
+	// fields at least that large.
+	private volatile Shape shape;
+	private Object[] fields;
+
+	LoxInstance(LoxClass klass) {
+		this.klass = klass;
+		this.shape = klass.root;
+		int count = klass.fieldCount;
+		this.fields = (count == 0) ? NO_FIELDS : new Object[count];
+	}
+
+	Object get(Expr.Get site) {
+		Shape.Property property = lookup(site);
+		if(property.slot >= 0) return this.fields[property.slot];
+		if(property.method != null) return property.method.bind(this);
+		throw new RuntimeError(site.name, "Undefined property '" + site.name.lexeme + "'.");
+	}
+
+	// the method called by `instance.name(...)`, invoked with this instance as receiver instead of
+	// allocating a bound method. null when name is a field, which get then reads.
+	LoxFunction method(Expr.Get site) {
+		Shape.Property property = lookup(site);
+		return (property.slot < 0) ? property.method : null;
+	}
+
+	void set(Expr.Set site, Object value) {
+		Shape shape = this.shape;
+		Shape.Property property = cached(site.cache);
+		if(property == null || property.shape != shape) {
+			property = shape.setter(site.name.lexeme);
+			site.cache = property.reference;
+		}
+
+		if(property.target == shape) {
+			this.fields[property.slot] = value;
+			return;
+		}
+
+		if(property.slot >= this.fields.length) {
+			this.fields = Arrays.copyOf(this.fields, Math.max(property.slot + 1, 2 * this.fields.length));
+		}
+		this.fields[property.slot] = value;
+		this.shape = property.target;
+	}
+
+	private Shape.Property lookup(Expr.Get site) {
+		Shape shape = this.shape;
+		Shape.Property property = cached(site.cache);
+		if(property != null && property.shape == shape) return property;
+
+		property = shape.getter(site.name.lexeme);
+		site.cache = property.reference;
+		return property;
+	}
+
+	// the property an inline cache holds, null when empty or cleared. The shape keeps it alive
+	// as long as instances of that shape exist, a miss only swaps in the reference of another.
+	private static Shape.Property cached(WeakReference<Shape.Property> cache) {
+		return (cache == null) ? null : cache.get();
+	}
+
+	@Override
+	public String toString() {
+		return this.klass.name + " instance";
+	}
+}
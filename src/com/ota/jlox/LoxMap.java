@@ -0,0 +1,198 @@
+package com.ota.jlox;
+
+// Hash map of Lox values: open addressing with linear probing over two flat arrays. A slot has
+// its key and value side by side in entries and a word in words: the bits of the double value of
+// a number key, which is stored unboxed, or the hash of any other key, compared before equals. Keys match as
+// in Operators.isEqual: numbers by value (as Double.equals does), strings by content whatever
+// their representation, others with equals.
+class LoxMap {
+	// markers in the key position of entries, null is a free slot.
+	private static final Object NUMBER  = new Object();
+	private static final Object DELETED = new Object();
+	// with a fixed hash, so the order of keys does not depend on the run.
+	private static final Object NIL     = new Object() {
+		@Override
+		public int hashCode() {
+			return 0;
+		}
+	};
+
+	private Object[] entries;
+	private long[] words;
+	private int size = 0;
+	// live plus deleted slots, kept under 3/4 of the capacity so that probing ends on a free slot.
+	private int used = 0;
+
+	// accounting of the run which created the map, null when disabled. A slot costs its key and
+	// value in entries and its word.
+	private final Memory memory;
+	private Memory.Retained retained = null;
+	private static final long SLOT = 3 * Memory.SLOT;
+
+	LoxMap(Memory memory) {
+		this.memory = memory;
+		if(memory != null) this.retained = memory.allocate(this, Memory.COLLECTION + SLOT * 8);
+		allocate(8);
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	Object get(Object key) {
+		int slot = find(key);
+		return (slot < 0) ? null : this.entries[2*slot + 1];
+	}
+
+	boolean has(Object key) {
+		return find(key) >= 0;
+	}
+
+	void set(Object key, Object value) {
+		if(Operators.isNumber(key)) {
+			long bits = Double.doubleToLongBits(Operators.toDouble(key));
+			put(NUMBER, bits, hash(bits), value);
+		} else {
+			Object normal = normalize(key);
+			int hash = hash(normal.hashCode());
+			put(normal, hash, hash, value);
+		}
+	}
+
+	boolean delete(Object key) {
+		int slot = find(key);
+		if(slot < 0) return false;
+
+		this.entries[2*slot] = DELETED;
+		this.entries[2*slot + 1] = null;
+		this.size--;
+		return true;
+	}
+
+	// the keys in slot order, in an array accounted to memory.
+	LoxArray keys(Memory memory) {
+		LoxArray keys = new LoxArray(memory, 0);
+		for(int i = 0; i < this.words.length; i++) {
+			if(isLive(this.entries[2*i])) keys.push(key(i));
+		}
+		return keys;
+	}
+
+	private Object key(int slot) {
+		Object key = this.entries[2*slot];
+		if(key == NUMBER) return Operators.number(Double.longBitsToDouble(this.words[slot]));
+		if(key == NIL) return null;
+		return key;
+	}
+
+	private static boolean isLive(Object key) {
+		return key != null && key != DELETED;
+	}
+
+	// ropes and lines are keyed by their String, which they keep and which keeps its hash, so a key
+	// is hashed once however often it is looked up. nil is keyed by a marker.
+	private static Object normalize(Object key) {
+		if(key == null) return NIL;
+		if(key instanceof CharSequence && !(key instanceof String)) return key.toString();
+		return key;
+	}
+
+	private int find(Object key) {
+		if(Operators.isNumber(key)) {
+			long bits = Double.doubleToLongBits(Operators.toDouble(key));
+			return probe(NUMBER, bits, hash(bits));
+		}
+		Object normal = normalize(key);
+		int hash = hash(normal.hashCode());
+		return probe(normal, hash, hash);
+	}
+
+	// slot of the key, or -1 - the slot where it would be inserted: the first deleted slot met
+	// on the way, or the free slot which ended the probe. key is NUMBER for the number with the
+	// given bits, else word is the hash of key.
+	private int probe(Object key, long word, int hash) {
+		Object[] entries = this.entries;
+		long[] words = this.words;
+		int mask = words.length - 1;
+		int deleted = -1;
+		for(int i = hash & mask; ; i = (i + 1) & mask) {
+			Object found = entries[2*i];
+			if(found == null) return -1 - ((deleted >= 0) ? deleted : i);
+			if(found == DELETED) {
+				if(deleted < 0) deleted = i;
+			} else if(words[i] == word && (found == key || (key != NUMBER && found != NUMBER && key.equals(found)))) {
+				return i;
+			}
+		}
+	}
+
+	private void put(Object key, long word, int hash, Object value) {
+		int slot = probe(key, word, hash);
+		if(slot >= 0) {
+			this.entries[2*slot + 1] = value;
+			return;
+		}
+
+		slot = -1 - slot;
+		if(this.entries[2*slot] == null) {
+			if(4 * (this.used + 1) > 3 * this.words.length) {
+				resize();
+				slot = -1 - probe(key, word, hash);
+			}
+			this.used++;
+		}
+		this.entries[2*slot] = key;
+		this.entries[2*slot + 1] = value;
+		this.words[slot] = word;
+		this.size++;
+	}
+
+	// doubles the capacity, or only drops the deleted slots when they are what fills the table.
+	private void resize() {
+		Object[] entries = this.entries;
+		long[] words = this.words;
+
+		int capacity = (2 * this.size >= words.length / 2) ? 2 * words.length : words.length;
+		if(this.memory != null && capacity > words.length) this.memory.grow(this.retained, SLOT * (capacity - words.length));
+		allocate(capacity);
+		this.used = this.size;
+		int mask = this.words.length - 1;
+		for(int i = 0; i < words.length; i++) {
+			Object key = entries[2*i];
+			if(!isLive(key)) continue;
+
+			int hash = (key == NUMBER) ? hash(words[i]) : (int)words[i];
+			int slot = hash & mask;
+			while(this.entries[2*slot] != null) slot = (slot + 1) & mask;
+			this.entries[2*slot] = key;
+			this.entries[2*slot + 1] = entries[2*i + 1];
+			this.words[slot] = words[i];
+		}
+	}
+
+	private void allocate(int capacity) {
+		this.entries = new Object[2 * capacity];
+		this.words = new long[capacity];
+	}
+
+	private static int hash(long bits) {
+		return hash((int)(bits ^ (bits >>> 32)));
+	}
+
+	// spreads the high bits down, integral numbers and similar strings differ mostly there.
+	private static int hash(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder("{");
+		for(int i = 0; i < this.words.length; i++) {
+			if(!isLive(this.entries[2*i])) continue;
+			if(text.length() > 1) text.append(", ");
+			text.append(Interpreter.stringify(key(i))).append(": ").append(Interpreter.stringify(this.entries[2*i + 1]));
+		}
+		return text.append("}").toString();
+	}
+}
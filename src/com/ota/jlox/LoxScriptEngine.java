@@ -0,0 +1,184 @@
+package com.ota.jlox;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+// javax.script binding of the interpreter. The ENGINE_SCOPE Bindings of a context are the map
+// behind Interpreter.globals, so globals defined by a script are visible to the host and the
+// other way around. Not thread-safe, use one engine per thread.
+class LoxScriptEngine extends AbstractScriptEngine implements Compilable, Invocable {
+	private final LoxScriptEngineFactory factory;
+
+	// session used by invokeFunction, rebuilt when the engine bindings are replaced.
+	private Session invoker;
+	private Bindings invokerBindings;
+
+	LoxScriptEngine(LoxScriptEngineFactory factory) {
+		this.factory = factory;
+	}
+
+	@Override
+	public Object eval(String script, ScriptContext context) throws ScriptException {
+		return compile(script).eval(context);
+	}
+
+	@Override
+	public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+		return eval(read(reader), context);
+	}
+
+	@Override
+	public Compiled compile(String script) throws ScriptException {
+		StringWriter errors = new StringWriter();
+		Session session = new Session(new PrintWriter(Writer.nullWriter()), new PrintWriter(errors));
+		CompiledScript compiled = session.compile(script);
+		if(compiled == null) throw new ScriptException(errors.toString().trim());
+		return new Compiled(compiled);
+	}
+
+	@Override
+	public Compiled compile(Reader reader) throws ScriptException {
+		return compile(read(reader));
+	}
+
+	@Override
+	public Bindings createBindings() {
+		return new SimpleBindings();
+	}
+
+	@Override
+	public ScriptEngineFactory getFactory() {
+		return this.factory;
+	}
+
+	@Override
+	public Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException {
+		Session session = invoker();
+		Object function;
+		try {
+			// through the globals to the natives enclosing them.
+			function = session.interpreter.globals.get(new Token(TokenType.IDENTIFIER, name, null, 0));
+		} catch(RuntimeError undefined) {
+			function = null;
+		}
+		if(!(function instanceof LoxCallable)) throw new NoSuchMethodException("No function '" + name + "'.");
+		return call(session, (LoxCallable)function, args);
+	}
+
+	@Override
+	public Object invokeMethod(Object thiz, String name, Object... args) throws ScriptException, NoSuchMethodException {
+		throw new NoSuchMethodException("Lox values have no methods.");
+	}
+
+	@Override
+	public <T> T getInterface(Class<T> type) {
+		if(type == null || !type.isInterface()) throw new IllegalArgumentException("Expected an interface.");
+
+		Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (self, method, args) -> {
+			if(method.getDeclaringClass() == Object.class) return method.invoke(this, args);
+			return invokeFunction(method.getName(), (args == null) ? new Object[0] : args);
+		});
+		return type.cast(proxy);
+	}
+
+	@Override
+	public <T> T getInterface(Object thiz, Class<T> type) {
+		throw new IllegalArgumentException("Lox values have no methods.");
+	}
+
+	private Session invoker() {
+		Bindings bindings = getBindings(ScriptContext.ENGINE_SCOPE);
+		if(this.invoker == null || this.invokerBindings != bindings) {
+			this.invoker = session(this.context, bindings);
+			this.invokerBindings = bindings;
+		}
+		return this.invoker;
+	}
+
+	private static Session session(ScriptContext context, Bindings bindings) {
+		PrintWriter out = new PrintWriter(context.getWriter(), true);
+		PrintWriter err = new PrintWriter(context.getErrorWriter(), true);
+		return new Session(out, err, bindings);
+	}
+
+	private static Object call(Session session, LoxCallable function, Object[] args) throws ScriptException {
+		if(args.length != function.arity()) {
+			throw new ScriptException("Expected " + function.arity() + " arguments but got " + args.length + ".");
+		}
+
+		Object[] arguments = new Object[args.length];
+		for(int i = 0; i < args.length; i++) {
+			arguments[i] = Operators.toLox(args[i]);
+		}
+
+		try {
+			return Operators.toHost(function.call(session.interpreter, Arrays.asList(arguments)));
+		} catch(RuntimeError error) {
+			throw scriptException(error, null);
+		} catch(Natives.Error error) {
+			throw new ScriptException(error.getMessage());
+		}
+	}
+
+	private static ScriptException scriptException(RuntimeError error, String filename) {
+		Events.runtimeError(error);
+		if(Metrics.ENABLED) Metrics.runtimeErrors.increment();
+		return new ScriptException(error.getMessage(), filename, error.token.line);
+	}
+
+	private static String read(Reader reader) throws ScriptException {
+		try {
+			StringWriter source = new StringWriter();
+			reader.transferTo(source);
+			return source.toString();
+		} catch(IOException error) {
+			throw new ScriptException(error);
+		}
+	}
+
+	class Compiled extends javax.script.CompiledScript {
+		private final CompiledScript script;
+
+		Compiled(CompiledScript script) {
+			this.script = script;
+		}
+
+		@Override
+		public Object eval(ScriptContext context) throws ScriptException {
+			Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+			for(Map.Entry<String, Object> entry : bindings.entrySet()) {
+				Object value = entry.getValue();
+				Object lox = Operators.toLox(value);
+				if(lox != value && !lox.equals(value)) entry.setValue(lox);
+			}
+
+			Session session = session(context, bindings);
+			try {
+				return Operators.toHost(session.evaluate(this.script));
+			} catch(RuntimeError error) {
+				throw scriptException(error, (String)context.getAttribute(ScriptEngine.FILENAME));
+			}
+		}
+
+		@Override
+		public ScriptEngine getEngine() {
+			return LoxScriptEngine.this;
+		}
+	}
+}
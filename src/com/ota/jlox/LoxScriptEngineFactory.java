@@ -0,0 +1,71 @@
+package com.ota.jlox;
+
+import java.util.List;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+public class LoxScriptEngineFactory implements ScriptEngineFactory {
+	private static final List<String> NAMES = List.of("lox", "jlox");
+	private static final List<String> EXTENSIONS = List.of("jlox", "lox");
+	private static final List<String> MIME_TYPES = List.of("application/x-lox");
+
+	@Override
+	public String getEngineName() { return "jlox"; }
+
+	@Override
+	public String getEngineVersion() { return "1.0"; }
+
+	@Override
+	public List<String> getExtensions() { return EXTENSIONS; }
+
+	@Override
+	public List<String> getMimeTypes() { return MIME_TYPES; }
+
+	@Override
+	public List<String> getNames() { return NAMES; }
+
+	@Override
+	public String getLanguageName() { return "lox"; }
+
+	@Override
+	public String getLanguageVersion() { return "1.0"; }
+
+	@Override
+	public Object getParameter(String key) {
+		switch(key) {
+			case ScriptEngine.ENGINE: return getEngineName();
+			case ScriptEngine.ENGINE_VERSION: return getEngineVersion();
+			case ScriptEngine.NAME: return NAMES.get(0);
+			case ScriptEngine.LANGUAGE: return getLanguageName();
+			case ScriptEngine.LANGUAGE_VERSION: return getLanguageVersion();
+			// an engine runs on a single interpreter, use one engine per thread.
+			case "THREADING": return null;
+			default: return null;
+		}
+	}
+
+	@Override
+	public String getMethodCallSyntax(String object, String method, String... args) {
+		return object + "." + method + "(" + String.join(", ", args) + ")";
+	}
+
+	@Override
+	public String getOutputStatement(String toDisplay) {
+		return "print \"" + toDisplay + "\";";
+	}
+
+	@Override
+	public String getProgram(String... statements) {
+		StringBuilder program = new StringBuilder();
+		for(String statement : statements) {
+			program.append(statement).append(";\n");
+		}
+		return program.toString();
+	}
+
+	@Override
+	public ScriptEngine getScriptEngine() {
+		return new LoxScriptEngine(this);
+	}
+}
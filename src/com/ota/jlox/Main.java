@@ -1,23 +1,37 @@
 package com.ota.jlox;
 
 import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.List;
 
 public class Main {
-	private static final Interpreter interpreter = new Interpreter();
-
-	static boolean hadError = false;
-	static boolean hadRuntimeError = false;
+	private static final Session session = new Session();
 
 	public static void main(String[] args) throws IOException {
-		if(args.length > 1) {
-			System.out.println("Usage: jlox [script]");
-			System.exit(64);
+		// the scripts run here are the user's own, unlike the ones the server receives.
+		boolean remote = args.length > 0 && (args[0].equals("--server") || args[0].equals("--connect"));
+		if(!remote) session.allowFiles();
+
+		if(args.length == 2 && args[0].equals("--server")) {
+			new Server(args[1]).serve();
+		} else if(args.length >= 2 && args.length <= 3 && args[0].equals("--connect")) {
+			runClient(args);
+		} else if(args.length == 2 && args[0].equals("--profile")) {
+			runProfiled(args[1]);
+		} else if(args.length == 2 && args[0].equals("--hits")) {
+			runCounted(args[1]);
+		} else if(args.length == 2 && args[0].equals("-n")) {
+			runLines(args[1]);
+		} else if(args.length == 2 && args[0].equals("--batch")) {
+			System.exit(new Batch(args[1]).run());
+		} else if(args.length > 1) {
+			usage();
 		} else if(args.length == 0) {
 			runPrompt();
 		} else {
@@ -25,61 +39,85 @@ public class Main {
 		}
 	}
 
+	private static void usage() {
+		System.out.println("Usage: jlox [script]");
+		System.out.println("       jlox --server <socket>");
+		System.out.println("       jlox --connect <socket> [script]");
+		System.out.println("       jlox -n <source> < input");
+		System.out.println("       jlox --batch <directory>");
+		System.out.println("       jlox --profile <script>");
+		System.out.println("       jlox --hits <script>");
+		System.exit(64);
+	}
+
 	private static void runFile(String filepath) throws IOException {
 		byte[] bytes = Files.readAllBytes(Paths.get(filepath));
-		run(new String(bytes, Charset.defaultCharset()));
-
-		if(hadError) System.exit(-1);
-		if(hadRuntimeError) System.exit(-2);
+		int status = session.run(new String(bytes, Charset.defaultCharset()));
+		if(status != 0) System.exit(status);
 	}
 
-	private static void runPrompt() throws IOException {
-		InputStreamReader input = new InputStreamReader(System.in);
-		BufferedReader reader = new BufferedReader(input);
+	// compiles the source once and runs it over every line of the standard input, like awk.
+	private static void runLines(String source) throws IOException {
+		CompiledScript script = session.compile(source);
+		if(script == null) System.exit(session.status());
 
-		while(true) {
-			System.out.print("> ");
-			String line = reader.readLine();
-			if(line == null) break;
-			run(line);
-			hadError = false;
-		}
+		FileChannel input = new FileInputStream(FileDescriptor.in).getChannel();
+		int status = session.executeLines(script, Lines.streamed(input));
+		if(status != 0) System.exit(status);
 	}
 
-	private static void run(String source) {
-		Lexer lexer = new Lexer(source);
-		List<Token> tokens = lexer.scanTokens();
+	// samples the lox call stack every millisecond, reports on stderr and writes <script>.collapsed.
+	private static void runProfiled(String filepath) throws IOException {
+		byte[] bytes = Files.readAllBytes(Paths.get(filepath));
+		Profiler profiler = new Profiler(1_000_000);
+		session.interpreter.profiler = profiler;
 
-		Parser parser = new Parser(tokens);
-		List<Stmt> statements = parser.parse();
+		profiler.start();
+		int status = session.run(new String(bytes, Charset.defaultCharset()));
+		profiler.stop();
 
-		if(hadError) return;
-		
-		Resolver resolver = new Resolver(interpreter);
-		resolver.resolve(statements);
-		
-		interpreter.interpret(statements);
-		// System.out.println(new AstPrinter().print(expression));
+		session.out.flush();
+		profiler.report(session.err);
+		profiler.writeCollapsed(Paths.get(filepath + ".collapsed"));
+		if(status != 0) System.exit(status);
 	}
 
-	static void error(int line, String message) {
-		report(line, "", message);
-	}
+	// counts the executions of every node and reports them per source line on stderr.
+	private static void runCounted(String filepath) throws IOException {
+		byte[] bytes = Files.readAllBytes(Paths.get(filepath));
+		String source = new String(bytes, Charset.defaultCharset());
+		session.interpreter.countHits = true;
 
-	private static void report(int line, String where, String message) {
-		System.err.println("[line " + line + "] Error " + where + ": " + message);
-		hadError = true;
+		CompiledScript script = session.compile(source);
+		if(script == null) System.exit(session.status());
+		int status = session.execute(script);
+
+		session.out.flush();
+		new HitReport(source).print(script, session.err);
+		if(status != 0) System.exit(status);
 	}
 
-	static void error(Token token, String message) {
-		String location = (token.type == TokenType.EOF) ?
-			" at end" :
-			" at '" + token.lexeme + "'";
-		report(token.line, location, message);
+	private static void runClient(String[] args) throws IOException {
+		Client client = new Client(args[1]);
+		int status;
+		if(args.length == 3) {
+			status = client.runFile(args[2]);
+		} else {
+			status = client.runSource(new String(System.in.readAllBytes(), Charset.defaultCharset()));
+		}
+		System.exit(status);
 	}
 
-	static void runtimeError(RuntimeError error) {
-		System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
-		hadRuntimeError = true;
+	private static void runPrompt() throws IOException {
+		InputStreamReader input = new InputStreamReader(System.in);
+		BufferedReader reader = new BufferedReader(input);
+
+		while(true) {
+			System.out.print("> ");
+			String line = reader.readLine();
+			if(line == null) break;
+			session.run(line);
+			session.hadError = false;
+		}
 	}
 }
@@ -0,0 +1,122 @@
+package com.ota.jlox;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.HashSet;
+import java.util.Set;
+
+// Approximate accounting of the memory a run keeps alive: every environment with its variables
+// and the strings they hold, and the storage of the arrays and maps it creates. The elements of a
+// collection are only counted by their slot. An environment is released when its scope ends, or
+// when the garbage collector finds it unreachable if a closure captured it, a collection when it
+// is collected. Going over the limit is a runtime error at the next define or assignment, or when
+// allocating or growing a collection. What the collector did not look at yet still counts, so a
+// run creating garbage close to its limit may fail before the next collection.
+class Memory {
+	// the bytes of a captured environment whose scope ended or of a collection, given back once it
+	// is collected.
+	static final class Retained extends PhantomReference<Object> {
+		private long bytes;
+
+		private Retained(Object owner, ReferenceQueue<Object> queue, long bytes) {
+			super(owner, queue);
+			this.bytes = bytes;
+		}
+	}
+
+	// rough 64 bits JVM sizes: Environment + HashMap + table, a HashMap node, a String header.
+	static final long ENVIRONMENT = 128;
+	static final long VARIABLE = 48;
+	static final long STRING = 40;
+	// a collection with the header of its storage array, and one slot of that array.
+	static final long COLLECTION = 48;
+	static final long SLOT = 8;
+
+	private final long limit;
+	private long live = 0;
+	private long peak = 0;
+	// the references are only reachable from here until they are enqueued.
+	private final Set<Retained> retained = new HashSet<>();
+	private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+	// a limit of 0 means accounting only.
+	Memory(long limit) {
+		this.limit = (limit > 0) ? limit : Long.MAX_VALUE;
+	}
+
+	// a line still in its bytes is counted by them, without decoding it. The same value always
+	// gets the same size, as it is given back with it.
+	static long sizeOf(Object value) {
+		if(value instanceof Lines.Slice) return STRING + 2L * ((Lines.Slice)value).bytes();
+		if(value instanceof CharSequence) return STRING + 2L * ((CharSequence)value).length();
+		return 0;
+	}
+
+	// synchronized for the tasks of a run, which share its accounting.
+	synchronized void charge(long bytes) {
+		this.live += bytes;
+		if(this.live > this.peak) this.peak = this.live;
+	}
+
+	synchronized void charge(Retained retained, long bytes) {
+		retained.bytes += bytes;
+		charge(bytes);
+	}
+
+	// keeps bytes, already charged, charged until owner is unreachable.
+	synchronized Retained retain(Object owner, long bytes) {
+		expunge();
+		Retained retained = new Retained(owner, this.collected, bytes);
+		this.retained.add(retained);
+		return retained;
+	}
+
+	// charges the storage of a new collection until it is unreachable. Checked before the caller
+	// allocates it, as natives grow collections without any define or assignment to check.
+	synchronized Retained allocate(Object collection, long bytes) {
+		if(exceeded(bytes)) throw new Natives.Error(exceededMessage(bytes));
+		Retained retained = retain(collection, bytes);
+		charge(bytes);
+		return retained;
+	}
+
+	// charges the growth of a collection, checked before the caller allocates it like allocate.
+	synchronized void grow(Retained retained, long bytes) {
+		if(exceeded(bytes)) throw new Natives.Error(exceededMessage(bytes));
+		charge(retained, bytes);
+	}
+
+	synchronized void check(Token where) {
+		if(exceeded(0)) throw new RuntimeError(where, exceededMessage(0));
+	}
+
+	// whether bytes more would go over the limit, once what the collector already found
+	// unreachable is given back. Never collects nor waits: the monitor is shared by the tasks of
+	// the run, and a collection would stall every other session of the JVM.
+	private boolean exceeded(long bytes) {
+		if(this.live + bytes <= this.limit) return false;
+		expunge();
+		return this.live + bytes > this.limit;
+	}
+
+	private String exceededMessage(long bytes) {
+		String more = (bytes > 0) ? ", " + bytes + " more needed" : "";
+		return "Memory limit exceeded (" + this.live + " bytes live" + more + ", limit " + this.limit + ").";
+	}
+
+	// gives back the bytes of the owners collected so far.
+	private void expunge() {
+		for(Reference<?> reference = this.collected.poll(); reference != null; reference = this.collected.poll()) {
+			release((Retained)reference);
+		}
+	}
+
+	private void release(Retained retained) {
+		if(this.retained.remove(retained)) charge(-retained.bytes);
+	}
+
+	synchronized long peak() {
+		return this.peak;
+	}
+}
@@ -0,0 +1,71 @@
+package com.ota.jlox;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Process wide counters shared by every interpreter, enabled with -Djlox.metrics=true.
+// ENABLED is a constant so the JIT drops the counting code from the hot paths when it is off.
+class Metrics implements MetricsMXBean {
+	static final boolean ENABLED = Boolean.getBoolean("jlox.metrics");
+
+	static final LongAdder statements = new LongAdder();
+	static final LongAdder calls = new LongAdder();
+	static final LongAdder environments = new LongAdder();
+	static final LongAdder runtimeErrors = new LongAdder();
+
+	static final LongAdder lexNanos = new LongAdder();
+	static final LongAdder parseNanos = new LongAdder();
+	static final LongAdder resolveNanos = new LongAdder();
+	static final LongAdder interpretNanos = new LongAdder();
+
+	static {
+		if(ENABLED) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(new Metrics(), new ObjectName("com.ota.jlox:type=Metrics"));
+			} catch(JMException error) {
+				System.err.println("jlox: could not register the metrics MBean: " + error.getMessage());
+			}
+		}
+	}
+
+	private Metrics() {}
+
+	@Override
+	public long getStatementsExecuted() { return statements.sum(); }
+
+	@Override
+	public long getLoxCalls() { return calls.sum(); }
+
+	@Override
+	public long getEnvironmentsAllocated() { return environments.sum(); }
+
+	@Override
+	public long getRuntimeErrors() { return runtimeErrors.sum(); }
+
+	@Override
+	public long getLexNanos() { return lexNanos.sum(); }
+
+	@Override
+	public long getParseNanos() { return parseNanos.sum(); }
+
+	@Override
+	public long getResolveNanos() { return resolveNanos.sum(); }
+
+	@Override
+	public long getInterpretNanos() { return interpretNanos.sum(); }
+
+	@Override
+	public void reset() {
+		statements.reset();
+		calls.reset();
+		environments.reset();
+		runtimeErrors.reset();
+		lexNanos.reset();
+		parseNanos.reset();
+		resolveNanos.reset();
+		interpretNanos.reset();
+	}
+}
@@ -0,0 +1,16 @@
+package com.ota.jlox;
+
+// Interpreter counters published as com.ota.jlox:type=Metrics, times are in nanoseconds.
+public interface MetricsMXBean {
+	long getStatementsExecuted();
+	long getLoxCalls();
+	long getEnvironmentsAllocated();
+	long getRuntimeErrors();
+
+	long getLexNanos();
+	long getParseNanos();
+	long getResolveNanos();
+	long getInterpretNanos();
+
+	void reset();
+}
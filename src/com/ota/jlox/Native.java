@@ -0,0 +1,17 @@
+package com.ota.jlox;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marks a static method to define as a Lox global function, see Session.bind. The function has
+// the name of the method unless another one is given. Parameters of type double, long, int,
+// boolean and String receive the Lox value converted, or fail with a runtime error, and results
+// of those types are converted back. Object parameters and results are Lox values as is.
+// A first parameter of type Interpreter receives the interpreter of the caller.
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Native {
+	String value() default "";
+}
@@ -0,0 +1,254 @@
+package com.ota.jlox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binds static Java methods as Lox functions. Each method handle is adapted once, at definition:
+// every typed parameter gets a converter unboxing the Lox value straight into it, the result is
+// boxed back in canonical form, and calls use invokeExact with the arguments spread, without an
+// array or reflection.
+class Natives {
+	// thrown by natives for misuse by the script, Interpreter.call reports it as a RuntimeError
+	// at the call site.
+	static class Error extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		Error(String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final Map<Class<?>, MethodHandle> PARAMETERS = new HashMap<>();
+	private static final Map<Class<?>, MethodHandle> RESULTS = new HashMap<>();
+
+	static {
+		try {
+			PARAMETERS.put(double.class, converter("toDouble", double.class, Object.class));
+			PARAMETERS.put(long.class, converter("toLong", long.class, Object.class));
+			PARAMETERS.put(int.class, converter("toInt", int.class, Object.class));
+			PARAMETERS.put(boolean.class, converter("toBoolean", boolean.class, Object.class));
+			PARAMETERS.put(String.class, converter("toText", String.class, Object.class));
+			PARAMETERS.put(LoxArray.class, converter("toArray", LoxArray.class, Object.class));
+			PARAMETERS.put(LoxMap.class, converter("toMap", LoxMap.class, Object.class));
+			PARAMETERS.put(LoxCallable.class, converter("toCallable", LoxCallable.class, Object.class));
+			PARAMETERS.put(LoxFile.class, converter("toFile", LoxFile.class, Object.class));
+			PARAMETERS.put(LoxGenerator.class, converter("toGenerator", LoxGenerator.class, Object.class));
+			PARAMETERS.put(Task.class, converter("toTask", Task.class, Object.class));
+			PARAMETERS.put(Channel.class, converter("toChannel", Channel.class, Object.class));
+			RESULTS.put(double.class, converter("number", Object.class, double.class));
+			RESULTS.put(long.class, converter("number", Object.class, long.class));
+			RESULTS.put(int.class, converter("number", Object.class, int.class));
+		} catch(ReflectiveOperationException error) {
+			throw new ExceptionInInitializerError(error);
+		}
+	}
+
+	private static MethodHandle converter(String name, Class<?> result, Class<?> parameter) throws ReflectiveOperationException {
+		return LOOKUP.findStatic(Natives.class, name, MethodType.methodType(result, parameter));
+	}
+
+	// the functions of every interpreter. The file ones are not, see Session.allowFiles.
+	static void define(Environment globals) {
+		bind(globals, Library.Collections.class);
+		bind(globals, Library.Maths.class);
+		bind(globals, Library.Strings.class);
+		bind(globals, Library.Time.class);
+		bind(globals, Library.Vectors.class);
+		bind(globals, Library.Generators.class);
+		bind(globals, Library.Tasks.class);
+	}
+
+	// defines the static methods of library annotated with @Native, which must be accessible from
+	// this package.
+	static void bind(Environment globals, Class<?> library) {
+		bind(globals, LOOKUP, library);
+	}
+
+	// the same with the access of lookup, e.g. the one of a host class for its package private
+	// libraries. Every method is checked before any is defined, so a failure defines none. A name
+	// already bound to a native is rejected rather than silently replaced.
+	static void bind(Environment globals, MethodHandles.Lookup lookup, Class<?> library) {
+		Map<String, Bound> natives = new HashMap<>();
+		for(Method method : library.getDeclaredMethods()) {
+			Native annotation = method.getAnnotation(Native.class);
+			if(annotation == null) continue;
+			if(!Modifier.isStatic(method.getModifiers())) {
+				throw new IllegalArgumentException("Native method " + method.getName() + " must be static.");
+			}
+
+			String name = annotation.value().isEmpty() ? method.getName() : annotation.value();
+			if(natives.containsKey(name) || globals.getAt(0, name) instanceof Bound) {
+				throw new IllegalArgumentException("Native function " + name + " is already defined.");
+			}
+			try {
+				natives.put(name, new Bound(name, adapt(lookup.unreflect(method))));
+			} catch(IllegalAccessException error) {
+				throw new IllegalArgumentException("Native method " + method.getName() + " is not accessible.", error);
+			}
+		}
+		for(Map.Entry<String, Bound> entry : natives.entrySet()) {
+			globals.define(entry.getKey(), entry.getValue());
+		}
+	}
+
+	// the handle with the type (Interpreter, Object, ...)Object. The calling interpreter, for natives
+	// calling back into Lox, is dropped unless the method declares it as its first parameter; it is
+	// not counted in the arity. Every task runs its own interpreter over the same globals.
+	private static MethodHandle adapt(MethodHandle handle) {
+		if(handle.type().parameterCount() == 0 || handle.type().parameterType(0) != Interpreter.class) {
+			handle = MethodHandles.dropArguments(handle, 0, Interpreter.class);
+		}
+
+		MethodType type = handle.type();
+		for(int i = 1; i < type.parameterCount(); i++) {
+			Class<?> parameter = type.parameterType(i);
+			if(parameter == Object.class) continue;
+
+			MethodHandle converter = PARAMETERS.get(parameter);
+			if(converter == null) throw new IllegalArgumentException("Unsupported native parameter type " + parameter.getName() + ".");
+			handle = MethodHandles.filterArguments(handle, i, converter);
+		}
+
+		MethodHandle result = RESULTS.get(type.returnType());
+		if(result != null) handle = MethodHandles.filterReturnValue(handle, result);
+		// void gives nil, booleans are boxed and references pass unchanged.
+		return handle.asType(MethodType.genericMethodType(type.parameterCount() - 1).insertParameterTypes(0, Interpreter.class));
+	}
+
+	// a bound static method.
+	static final class Bound implements LoxCallable {
+		private final String name;
+		private final MethodHandle handle;
+		private final int arity;
+
+		Bound(String name, MethodHandle handle) {
+			this.name = name;
+			this.handle = handle;
+			this.arity = handle.type().parameterCount() - 1;
+		}
+
+		@Override
+		public int arity() {
+			return this.arity;
+		}
+
+		@Override
+		public Object call(Interpreter interpreter, List<Object> arguments) {
+			try {
+				switch(this.arity) {
+					case 0: return (Object)this.handle.invokeExact(interpreter);
+					case 1: return (Object)this.handle.invokeExact(interpreter, arguments.get(0));
+					case 2: return (Object)this.handle.invokeExact(interpreter, arguments.get(0), arguments.get(1));
+					case 3: return (Object)this.handle.invokeExact(interpreter, arguments.get(0), arguments.get(1), arguments.get(2));
+					default: {
+						List<Object> all = new ArrayList<>(arguments.size() + 1);
+						all.add(interpreter);
+						all.addAll(arguments);
+						return this.handle.invokeWithArguments(all);
+					}
+				}
+			} catch(RuntimeError | Error error) {
+				throw error;
+			} catch(IllegalArgumentException | ArithmeticException | IndexOutOfBoundsException error) {
+				throw new Error(message(error));
+			} catch(RuntimeException | java.lang.Error error) {
+				throw error;
+			} catch(Throwable error) {
+				// checked exceptions of the method, e.g. IOException.
+				throw new Error(message(error));
+			}
+		}
+
+		private String message(Throwable error) {
+			String message = error.getMessage();
+			return this.name + ": " + ((message != null) ? message : error.getClass().getSimpleName()) + ".";
+		}
+
+		@Override
+		public String toString() {
+			return "<native fn>";
+		}
+	}
+
+	private static double toDouble(Object value) {
+		if(!Operators.isNumber(value)) throw new Error("Operand must be a number.");
+		return Operators.toDouble(value);
+	}
+
+	// integral numbers are Longs, a Double has a fraction or is too large.
+	private static long toLong(Object value) {
+		if(!(value instanceof Long)) throw new Error("Operand must be an integer.");
+		return (long)value;
+	}
+
+	private static int toInt(Object value) {
+		long number = toLong(value);
+		if(number < Integer.MIN_VALUE || number > Integer.MAX_VALUE) throw new Error("Operand " + number + " is too large.");
+		return (int)number;
+	}
+
+	private static boolean toBoolean(Object value) {
+		if(!(value instanceof Boolean)) throw new Error("Operand must be a boolean.");
+		return (boolean)value;
+	}
+
+	private static String toText(Object value) {
+		if(!(value instanceof CharSequence)) throw new Error("Operand must be a string.");
+		return value.toString();
+	}
+
+	private static LoxArray toArray(Object value) {
+		if(!(value instanceof LoxArray)) throw new Error("Operand must be an array.");
+		return (LoxArray)value;
+	}
+
+	private static LoxMap toMap(Object value) {
+		if(!(value instanceof LoxMap)) throw new Error("Operand must be a map.");
+		return (LoxMap)value;
+	}
+
+	private static LoxCallable toCallable(Object value) {
+		if(!(value instanceof LoxCallable)) throw new Error("Operand must be a function.");
+		return (LoxCallable)value;
+	}
+
+	private static LoxFile toFile(Object value) {
+		if(!(value instanceof LoxFile)) throw new Error("Operand must be a file.");
+		return (LoxFile)value;
+	}
+
+	private static LoxGenerator toGenerator(Object value) {
+		if(!(value instanceof LoxGenerator)) throw new Error("Operand must be a generator.");
+		return (LoxGenerator)value;
+	}
+
+	private static Task toTask(Object value) {
+		if(!(value instanceof Task)) throw new Error("Operand must be a task.");
+		return (Task)value;
+	}
+
+	private static Channel toChannel(Object value) {
+		if(!(value instanceof Channel)) throw new Error("Operand must be a channel.");
+		return (Channel)value;
+	}
+
+	private static Object number(double value) {
+		return Operators.number(value);
+	}
+
+	private static Object number(long value) {
+		return Operators.number(value);
+	}
+
+	private static Object number(int value) {
+		return (long)value;
+	}
+}
@@ -0,0 +1,155 @@
+package com.ota.jlox;
+
+// Semantics of the Lox operators, shared by the Interpreter and the ClosureCompiler.
+//
+// Lox numbers are doubles, represented two ways: a Long when the value is integral, within
+// +-2^53 (where every integer is exact as a double) and not -0, a Double otherwise. Every number
+// is built in that canonical form, so equality stays equals() and integral arithmetic runs on
+// longs. An operation on two longs whose exact result leaves that range, or which would give -0
+// or a fraction, computes the double result instead, which is exactly what the double operation
+// would have given.
+class Operators {
+	static final long MAX_EXACT = 1L << 53;
+
+	static boolean isTruthy(Object value) {
+		if(value == null) return false;
+		if(value instanceof Boolean) return (boolean)value;
+		return true;
+	}
+
+	static boolean isEqual(Object left, Object right) {
+		if(left == null && right == null) return true;
+		if(left == null) return false;
+
+		// strings compare by content whatever their representation.
+		if(left instanceof CharSequence && right instanceof CharSequence) {
+			return left.toString().equals(right.toString());
+		}
+		return left.equals(right);
+	}
+
+	// the canonical representation of a number.
+	static Object number(double value) {
+		long integral = (long)value;
+		if(integral == value && integral >= -MAX_EXACT && integral <= MAX_EXACT) {
+			if(integral != 0 || Double.doubleToRawLongBits(value) == 0) return integral;
+		}
+		return value;
+	}
+
+	static Object number(long value) {
+		if(value >= -MAX_EXACT && value <= MAX_EXACT) return value;
+		return (double)value;
+	}
+
+	// host values: numbers become canonical lox numbers, other values are passed as is.
+	static Object toLox(Object value) {
+		if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return number(((Number)value).longValue());
+		}
+		if(value instanceof Number) return number(((Number)value).doubleValue());
+		return value;
+	}
+
+	// values returned to the host: strings as String and numbers as Double.
+	static Object toHost(Object value) {
+		if(value instanceof CharSequence && !(value instanceof String)) return value.toString();
+		if(value instanceof Long) return (double)(long)value;
+		return value;
+	}
+
+	static boolean isNumber(Object value) {
+		return value instanceof Long || value instanceof Double;
+	}
+
+	// the value of a number, see isNumber.
+	static double toDouble(Object number) {
+		if(number instanceof Long) return (long)number;
+		return (double)number;
+	}
+
+	// each operation has its two longs case first and small enough to be inlined, the other
+	// operands go through a separate method.
+	static Object negate(Token operator, Object value) {
+		if(value instanceof Long && (long)value != 0) return -(long)value;
+		checkNumberOperand(operator, value);
+		return number(-toDouble(value));
+	}
+
+	static Object add(Token operator, Object left, Object right) {
+		if(left instanceof Long && right instanceof Long) return number((long)left + (long)right);
+		return addOthers(operator, left, right);
+	}
+
+	private static Object addOthers(Token operator, Object left, Object right) {
+		if(isNumber(left) && isNumber(right))
+			return number(toDouble(left) + toDouble(right));
+
+		if(left instanceof CharSequence && right instanceof CharSequence)
+			return Rope.concat((CharSequence)left, (CharSequence)right);
+
+		throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+	}
+
+	static Object subtract(Token operator, Object left, Object right) {
+		if(left instanceof Long && right instanceof Long) return number((long)left - (long)right);
+		checkNumberOperands(operator, left, right);
+		return number(toDouble(left) - toDouble(right));
+	}
+
+	// below 2^26 the product of two longs is exact, but 0 times a negative number is -0.
+	static Object multiply(Token operator, Object left, Object right) {
+		if(left instanceof Long && right instanceof Long) {
+			long a = (long)left;
+			long b = (long)right;
+			if(Math.abs(a) < (1 << 26) && Math.abs(b) < (1 << 26) && ((a | b) >= 0 || (a != 0 && b != 0))) return a * b;
+		}
+		checkNumberOperands(operator, left, right);
+		return number(toDouble(left) * toDouble(right));
+	}
+
+	// exact when the division has no remainder, but 0 divided by a negative number is -0.
+	static Object divide(Token operator, Object left, Object right) {
+		if(left instanceof Long && right instanceof Long) {
+			long a = (long)left;
+			long b = (long)right;
+			if(b != 0 && a % b == 0 && (a != 0 || b > 0)) return a / b;
+		}
+		checkNumberOperands(operator, left, right);
+		return number(toDouble(left) / toDouble(right));
+	}
+
+	static Object greater(Token operator, Object left, Object right) {
+		if(left instanceof Long && right instanceof Long) return (long)left > (long)right;
+		checkNumberOperands(operator, left, right);
+		return toDouble(left) > toDouble(right);
+	}
+
+	static Object greaterEqual(Token operator, Object left, Object right) {
+		if(left instanceof Long && right instanceof Long) return (long)left >= (long)right;
+		checkNumberOperands(operator, left, right);
+		return toDouble(left) >= toDouble(right);
+	}
+
+	static Object less(Token operator, Object left, Object right) {
+		if(left instanceof Long && right instanceof Long) return (long)left < (long)right;
+		checkNumberOperands(operator, left, right);
+		return toDouble(left) < toDouble(right);
+	}
+
+	static Object lessEqual(Token operator, Object left, Object right) {
+		if(left instanceof Long && right instanceof Long) return (long)left <= (long)right;
+		checkNumberOperands(operator, left, right);
+		return toDouble(left) <= toDouble(right);
+	}
+
+	private static void checkNumberOperand(Token operator, Object operand) {
+		if(isNumber(operand)) return;
+		throw new RuntimeError(operator, "Operand must be a number.");
+	}
+
+	private static void checkNumberOperands(Token operator, Object left, Object right) {
+		if(isNumber(right) && isNumber(left)) return;
+		throw new RuntimeError(operator, "Operands must be number.");
+	}
+}
@@ -0,0 +1,101 @@
+package com.ota.jlox;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+// Writer encoding the printed text into a large byte buffer that only reaches the channel when
+// it fills up or on flush. System.out locks and flushes through its own layers on every line,
+// which bounds scripts printing a lot. -Djlox.output.buffer sets the size in chars.
+class Output extends Writer {
+	static final int BUFFER_SIZE = Integer.getInteger("jlox.output.buffer", 1 << 16);
+
+	private final WritableByteChannel channel;
+	private final CharsetEncoder encoder;
+	private final CharBuffer chars;
+	private final ByteBuffer bytes;
+
+	Output(WritableByteChannel channel, Charset charset, int size) {
+		this.channel = channel;
+		this.encoder = charset.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.chars = CharBuffer.allocate(size);
+		this.bytes = ByteBuffer.allocateDirect(size);
+	}
+
+	// the standard output, bypassing System.out.
+	static Output stdout() {
+		WritableByteChannel channel = Channels.newChannel(new FileOutputStream(FileDescriptor.out));
+		return new Output(channel, System.out.charset(), BUFFER_SIZE);
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		if(!this.chars.hasRemaining()) encode(false);
+		this.chars.put((char)c);
+	}
+
+	@Override
+	public void write(char[] source, int offset, int length) throws IOException {
+		while(length > 0) {
+			if(!this.chars.hasRemaining()) encode(false);
+			int count = Math.min(length, this.chars.remaining());
+			this.chars.put(source, offset, count);
+			offset += count;
+			length -= count;
+		}
+	}
+
+	@Override
+	public void write(String source, int offset, int length) throws IOException {
+		while(length > 0) {
+			if(!this.chars.hasRemaining()) encode(false);
+			int count = Math.min(length, this.chars.remaining());
+			int position = this.chars.position();
+			source.getChars(offset, offset + count, this.chars.array(), this.chars.arrayOffset() + position);
+			this.chars.position(position + count);
+			offset += count;
+			length -= count;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		encode(true);
+	}
+
+	// the channel is left open, it usually is the process' standard output.
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+	// moves the pending chars into the byte buffer, writing it out each time it is full. A trailing
+	// high surrogate stays pending until its pair arrives.
+	private void encode(boolean drain) throws IOException {
+		this.chars.flip();
+		while(true) {
+			CoderResult result = this.encoder.encode(this.chars, this.bytes, false);
+			if(!result.isOverflow()) break;
+			writeBytes();
+		}
+		this.chars.compact();
+		if(drain) writeBytes();
+	}
+
+	private void writeBytes() throws IOException {
+		this.bytes.flip();
+		while(this.bytes.hasRemaining()) this.channel.write(this.bytes);
+		this.bytes.clear();
+	}
+}
@@ -7,10 +7,12 @@ import java.util.List;
 class Parser {
 	private static class ParseError extends RuntimeException {}
 
+	private final Session session;
 	private final List<Token> tokens;
 	private int current = 0;
 
-	Parser(List<Token> tokens) {
+	Parser(Session session, List<Token> tokens) {
+		this.session = session;
 		this.tokens = tokens;
 	}
 
@@ -24,6 +26,7 @@ class Parser {
 
 	private Stmt declaration() {
 		try {
+			if(match(TokenType.CLASS)) return classDeclaration();
 			if(match(TokenType.FUN)) return function("function");
 			if(match(TokenType.VAR)) return varDeclaration();
 			return statement();
@@ -33,6 +36,25 @@ class Parser {
 		}
 	}
 
+	private Stmt classDeclaration() {
+		Token name = consume(TokenType.IDENTIFIER, "Expect class name.");
+
+		Expr.Variable superclass = null;
+		if(match(TokenType.LESS)) {
+			consume(TokenType.IDENTIFIER, "Expect superclass name.");
+			superclass = new Expr.Variable(previous());
+		}
+
+		consume(TokenType.LEFT_BRACE, "Expect '{' before class body.");
+		List<Stmt.Function> methods = new ArrayList<>();
+		while(!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
+			methods.add(function("method"));
+		}
+		consume(TokenType.RIGHT_BRACE, "Expect '}' after class body.");
+
+		return new Stmt.Class(name, superclass, methods);
+	}
+
 	private Stmt varDeclaration() {
 		Token name = consume(TokenType.IDENTIFIER, "Expect variable name.");
 
@@ -71,6 +93,7 @@ class Parser {
 		if(match(TokenType.WHILE)) return whileStatement();
 		if(match(TokenType.PRINT)) return printStatement();
 		if(match(TokenType.RETURN)) return returnStatement();
+		if(match(TokenType.YIELD)) return yieldStatement();
 		if(match(TokenType.LEFT_BRACE)) return new Stmt.Block(block());
 		return expressionStatement();
 	}
@@ -89,6 +112,7 @@ class Parser {
 	}
 
 	private Stmt forStatement() {
+		Token keyword = previous();
 		consume(TokenType.LEFT_PAREN, "Expect '(' after 'for'.");
 
 		Stmt initializer;
@@ -124,7 +148,7 @@ class Parser {
 		}
 
 		if(condition == null) condition = new Expr.Literal(true);
-		body = new Stmt.While(condition, body);
+		body = new Stmt.While(keyword, condition, body);
 
 		if(initializer != null) {
 			body = new Stmt.Block(
@@ -139,12 +163,13 @@ class Parser {
 	}
 
 	private Stmt whileStatement() {
+		Token keyword = previous();
 		consume(TokenType.LEFT_PAREN, "Expect '(' after 'while'.");
 		Expr condition = expression();
 		consume(TokenType.RIGHT_PAREN, "Expect ')' after condition.");
 		Stmt body = statement();
 
-		return new Stmt.While(condition, body);
+		return new Stmt.While(keyword, condition, body);
 	}
 
 	private Stmt printStatement() {
@@ -161,6 +186,14 @@ class Parser {
 		return new Stmt.Return(keyword, value);
 	}
 
+	private Stmt yieldStatement() {
+		Token keyword = previous();
+		Expr value = null;
+		if(!check(TokenType.SEMICOLON)) value = expression();
+		consume(TokenType.SEMICOLON, "Expect ';' after yield value.");
+		return new Stmt.Yield(keyword, value);
+	}
+
 	private Stmt expressionStatement() {
 		Expr expression = expression();
 		consume(TokenType.SEMICOLON, "Expect ';' after expression.");
@@ -190,6 +223,9 @@ class Parser {
 			if(expression instanceof Expr.Variable) {
 				Token name = ((Expr.Variable)expression).name;
 				return new Expr.Assign(name, value);
+			} else if(expression instanceof Expr.Get) {
+				Expr.Get get = (Expr.Get)expression;
+				return new Expr.Set(get.object, get.name, value);
 			}
 
 			error(equals, "Invalid assignment target.");
@@ -286,6 +322,9 @@ class Parser {
 		while(true) {
 			if(match(TokenType.LEFT_PAREN)) {
 				expression = finishCall(expression);
+			} else if(match(TokenType.DOT)) {
+				Token name = consume(TokenType.IDENTIFIER, "Expect property name after '.'.");
+				expression = new Expr.Get(expression, name);
 			} else break;
 		}
 
@@ -314,6 +353,15 @@ class Parser {
 
 		if(match(TokenType.NUMBER, TokenType.STRING)) return new Expr.Literal(previous().literal);
 
+		if(match(TokenType.SUPER)) {
+			Token keyword = previous();
+			consume(TokenType.DOT, "Expect '.' after 'super'.");
+			Token method = consume(TokenType.IDENTIFIER, "Expect superclass method name.");
+			return new Expr.Super(keyword, method);
+		}
+
+		if(match(TokenType.THIS)) return new Expr.This(previous());
+
 		if(match(TokenType.IDENTIFIER)) return new Expr.Variable(previous());
 
 		if(match(TokenType.LEFT_PAREN)) {
@@ -365,7 +413,7 @@ class Parser {
 	}
 
 	private ParseError error(Token token, String message) {
-		Main.error(token, message);
+		this.session.error(token, message);
 		return new ParseError();
 	}
 
@@ -384,6 +432,7 @@ class Parser {
 				case WHILE:
 				case PRINT:
 				case RETURN:
+				case YIELD:
 					return;
 				default:
 					break;
@@ -0,0 +1,147 @@
+package com.ota.jlox;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+// Sampling profiler of Lox code. LoxFunction.call pushes and pops frames of a shadow stack,
+// a background thread samples the top of that stack at a fixed interval. Everything is keyed by
+// the function node, null for the top level, and only named by the report.
+class Profiler {
+	private static final String ROOT = "<script>";
+
+	// immutable, so the sampler can walk a stack published through the volatile top.
+	private static class Frame {
+		final Stmt.Function function;
+		final Frame parent;
+
+		Frame(Stmt.Function function, Frame parent) {
+			this.function = function;
+			this.parent = parent;
+		}
+	}
+
+	private final long interval;
+	private volatile Frame top = null;
+	private volatile boolean running = false;
+	private Thread sampler;
+
+	// only touched by the interpreter thread, a counter per function counted in place.
+	private final Map<Stmt.Function, long[]> calls = new IdentityHashMap<>();
+	// only touched by the sampler thread until it is joined. Stacks go from the outermost call.
+	private final Map<List<Stmt.Function>, Long> stacks = new HashMap<>();
+	private final Map<Stmt.Function, Long> self = new IdentityHashMap<>();
+	private final Map<Stmt.Function, Long> total = new IdentityHashMap<>();
+	private long samples = 0;
+
+	Profiler(long intervalNanos) {
+		this.interval = intervalNanos;
+	}
+
+	void enter(Stmt.Function function) {
+		long[] count = this.calls.get(function);
+		if(count == null) {
+			count = new long[1];
+			this.calls.put(function, count);
+		}
+		count[0]++;
+		this.top = new Frame(function, this.top);
+	}
+
+	void exit() {
+		this.top = this.top.parent;
+	}
+
+	void start() {
+		this.running = true;
+		this.sampler = new Thread(this::sampleLoop, "jlox-profiler");
+		this.sampler.setDaemon(true);
+		this.sampler.start();
+	}
+
+	void stop() {
+		this.running = false;
+		try {
+			this.sampler.join();
+		} catch(InterruptedException error) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void sampleLoop() {
+		while(this.running) {
+			LockSupport.parkNanos(this.interval);
+			sample(this.top);
+		}
+	}
+
+	private void sample(Frame frame) {
+		List<Stmt.Function> stack = new ArrayList<>();
+		for(Frame f = frame; f != null; f = f.parent) stack.add(f.function);
+		Collections.reverse(stack);
+
+		this.total.merge(null, 1L, Long::sum);
+		Set<Stmt.Function> seen = new HashSet<>();
+		for(Stmt.Function function : stack) {
+			// recursive functions only count once per sample in the total time.
+			if(seen.add(function)) this.total.merge(function, 1L, Long::sum);
+		}
+
+		this.stacks.merge(stack, 1L, Long::sum);
+		this.self.merge((frame == null) ? null : frame.function, 1L, Long::sum);
+		this.samples++;
+	}
+
+	private static String name(Stmt.Function function) {
+		return (function == null) ? ROOT : function.name.lexeme + ":" + function.name.line;
+	}
+
+	void report(PrintWriter out) {
+		List<Stmt.Function> functions = new ArrayList<>(this.total.keySet());
+		for(Stmt.Function function : this.calls.keySet()) {
+			if(!this.total.containsKey(function)) functions.add(function);
+		}
+		functions.sort((a, b) -> Long.compare(this.self.getOrDefault(b, 0L), this.self.getOrDefault(a, 0L)));
+
+		double millis = this.interval / 1e6;
+		out.printf("%d samples every %.3fms%n", this.samples, millis);
+		out.printf("%10s %7s %10s %7s %10s  %s%n", "self", "", "total", "", "calls", "function");
+		for(Stmt.Function function : functions) {
+			long selfSamples = this.self.getOrDefault(function, 0L);
+			long totalSamples = this.total.getOrDefault(function, 0L);
+			long[] calls = this.calls.get(function);
+			out.printf("%8.1fms %6.1f%% %8.1fms %6.1f%% %10d  %s%n",
+				selfSamples * millis, percent(selfSamples),
+				totalSamples * millis, percent(totalSamples),
+				(calls == null) ? 0 : calls[0], name(function));
+		}
+		out.flush();
+	}
+
+	private double percent(long count) {
+		return (this.samples == 0) ? 0.0 : 100.0 * count / this.samples;
+	}
+
+	// one "frame;frame;frame count" line per distinct stack, as flame graph tools expect.
+	void writeCollapsed(Path path) throws IOException {
+		List<String> lines = new ArrayList<>();
+		for(Map.Entry<List<Stmt.Function>, Long> entry : this.stacks.entrySet()) {
+			StringBuilder line = new StringBuilder(ROOT);
+			for(Stmt.Function function : entry.getKey()) line.append(';').append(name(function));
+			lines.add(line.append(' ').append(entry.getValue()).toString());
+		}
+		lines.sort(null);
+		Files.write(path, lines, StandardCharsets.UTF_8);
+	}
+}
@@ -6,17 +6,30 @@ import java.util.Map;
 import java.util.Stack;
 
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-	private final Interpreter interpreter;
+	private final Session session;
 	private final Stack<Map<String, Boolean>> scopes = new Stack<>();
 	private FunctionType currentFunction = FunctionType.NONE;
-
-	Resolver(Interpreter interpreter) {
-		this.interpreter = interpreter;
+	private ClassType currentClass = ClassType.NONE;
+	// whether the statements resolved so far in the current function yield, and its first return
+	// with a value, an error in a generator.
+	private boolean yielded = false;
+	private Token returnedValue = null;
+
+	Resolver(Session session) {
+		this.session = session;
 	}
 
 	private enum FunctionType {
 		NONE,
-		FUNCTION
+		FUNCTION,
+		INITIALIZER,
+		METHOD
+	}
+
+	private enum ClassType {
+		NONE,
+		CLASS,
+		SUBCLASS
 	}
 
 	@Override
@@ -27,6 +40,36 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	@Override
+	public Void visitClassStmt(Stmt.Class klass) {
+		ClassType enclosingClass = this.currentClass;
+		this.currentClass = ClassType.CLASS;
+
+		declare(klass.name);
+		define(klass.name);
+
+		if(klass.superclass != null) {
+			if(klass.name.lexeme.equals(klass.superclass.name.lexeme)) {
+				this.session.error(klass.superclass.name, "A class can't inherit from itself.");
+			}
+			this.currentClass = ClassType.SUBCLASS;
+			resolve(klass.superclass);
+
+			beginScope();
+			this.scopes.peek().put("super", true);
+		}
+
+		for(Stmt.Function method : klass.methods) {
+			FunctionType type = method.name.lexeme.equals("init") ? FunctionType.INITIALIZER : FunctionType.METHOD;
+			resolveFunction(method, type);
+		}
+
+		if(klass.superclass != null) endScope();
+
+		this.currentClass = enclosingClass;
+		return null;
+	}
+
 	@Override
 	public Void visitVarStmt(Stmt.Var variable) {
 		declare(variable.name);
@@ -40,17 +83,17 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitVariableExpr(Expr.Variable variable) {
 		if(!this.scopes.isEmpty() && this.scopes.peek().get(variable.name.lexeme) == Boolean.FALSE) {
-			Main.error(variable.name, "Can't read local variable in its own initializer.");
+			this.session.error(variable.name, "Can't read local variable in its own initializer.");
 		}
 
-		resolveLocal(variable, variable.name);
+		variable.depth = resolveLocal(variable.name);
 		return null;
 	}
 
 	@Override
 	public Void visitAssignExpr(Expr.Assign assignment) {
 		resolve(assignment.value);
-		resolveLocal(assignment, assignment.name);
+		assignment.depth = resolveLocal(assignment.name);
 		return null;
 	}
 
@@ -85,10 +128,14 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitReturnStmt(Stmt.Return statement) {
 		if(this.currentFunction == FunctionType.NONE) {
-			Main.error(statement.keyword, "Can't return from top-level code.");
+			this.session.error(statement.keyword, "Can't return from top-level code.");
 		}
 
 		if(statement.value != null) {
+			if(this.currentFunction == FunctionType.INITIALIZER) {
+				this.session.error(statement.keyword, "Can't return a value from an initializer.");
+			}
+			if(this.returnedValue == null) this.returnedValue = statement.keyword;
 			resolve(statement.value);
 		}
 		return null;
@@ -101,6 +148,19 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	@Override
+	public Void visitYieldStmt(Stmt.Yield statement) {
+		if(this.currentFunction == FunctionType.NONE) {
+			this.session.error(statement.keyword, "Can't yield from top-level code.");
+		} else if(this.currentFunction == FunctionType.INITIALIZER) {
+			this.session.error(statement.keyword, "Can't yield from an initializer.");
+		}
+
+		if(statement.value != null) resolve(statement.value);
+		this.yielded = true;
+		return null;
+	}
+
 	@Override
 	public Void visitBinaryExpr(Expr.Binary binary) {
 		resolve(binary.left);
@@ -117,6 +177,12 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	@Override
+	public Void visitGetExpr(Expr.Get get) {
+		resolve(get.object);
+		return null;
+	}
+
 	@Override
 	public Void visitGroupingExpr(Expr.Grouping group) {
 		resolve(group.expression);
@@ -135,26 +201,64 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	@Override
+	public Void visitSetExpr(Expr.Set set) {
+		resolve(set.object);
+		resolve(set.value);
+		return null;
+	}
+
+	@Override
+	public Void visitSuperExpr(Expr.Super expression) {
+		if(this.currentClass == ClassType.NONE) {
+			this.session.error(expression.keyword, "Can't use 'super' outside of a class.");
+		} else if(this.currentClass != ClassType.SUBCLASS) {
+			this.session.error(expression.keyword, "Can't use 'super' in a class with no superclass.");
+		}
+
+		expression.depth = resolveLocal(expression.keyword);
+		return null;
+	}
+
+	@Override
+	public Void visitThisExpr(Expr.This expression) {
+		if(this.currentClass == ClassType.NONE) {
+			this.session.error(expression.keyword, "Can't use 'this' outside of a class.");
+			return null;
+		}
+
+		expression.depth = resolveLocal(expression.keyword);
+		return null;
+	}
+
 	@Override
 	public Void visitUnaryExpr(Expr.Unary unary) {
 		resolve(unary.right);
 		return null;
 	}
 
-	private void resolveLocal(Expr expression, Token name) {
+	private int resolveLocal(Token name) {
 		for(int i = this.scopes.size() - 1; i >= 0; i--) {
 			if(this.scopes.get(i).containsKey(name.lexeme)) {
-				this.interpreter.resolve(expression, this.scopes.size()-1-i);
-				return;
+				return this.scopes.size()-1-i;
 			}
 		}
+		return -1;
 	}
 
 	private void resolveFunction(Stmt.Function function, FunctionType type) {
 		FunctionType enclosingFunction = this.currentFunction;
+		boolean enclosingYielded = this.yielded;
+		Token enclosingReturnedValue = this.returnedValue;
 		currentFunction = type;
+		this.yielded = false;
+		this.returnedValue = null;
 		
 		beginScope();
+		// methods get 'this' in the same scope as their parameters, no scope of its own.
+		if(type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+			this.scopes.peek().put("this", true);
+		}
 		for(Token param : function.params) {
 			declare(param);
 			define(param);
@@ -162,11 +266,21 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		resolve(function.body);
 		endScope();
 
+		function.generator = this.yielded;
+		if(function.generator && this.returnedValue != null) {
+			this.session.error(this.returnedValue, "Can't return a value from a generator.");
+		}
 		this.currentFunction = enclosingFunction;
+		this.yielded = enclosingYielded;
+		this.returnedValue = enclosingReturnedValue;
 	}
 
 	private void resolve(Stmt statement) {
+		boolean enclosing = this.yielded;
+		this.yielded = false;
 		statement.accept(this);
+		statement.yields = this.yielded;
+		this.yielded |= enclosing;
 	}
 
 	void resolve(List<Stmt> statements) {
@@ -183,7 +297,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		if(this.scopes.isEmpty()) return;
 		Map<String, Boolean> scope = this.scopes.peek();
 		if(scope.containsKey(name.lexeme)) {
-			Main.error(name, "Already a variable with this name in this scope.");
+			this.session.error(name, "Already a variable with this name in this scope.");
 		}
 		scope.put(name.lexeme, false);
 	}
@@ -0,0 +1,101 @@
+package com.ota.jlox;
+
+import java.util.ArrayDeque;
+
+// Lox string built by concatenation. Joining two strings only allocates a node, the characters
+// are copied once, the first time the content is needed (printing, equality, hashing), which
+// makes `s = s + x` in a loop linear instead of quadratic. Lox strings are therefore any
+// CharSequence: a String or a Rope.
+final class Rope implements CharSequence {
+	// shorter results are plain strings, copying them is cheaper than keeping a node.
+	private static final int FLAT_LIMIT = 256;
+
+	// nulled once flattened, so the cached string does not keep the tree alive. Volatile and
+	// written after flat, so a null child means flat is visible.
+	private volatile CharSequence left;
+	private volatile CharSequence right;
+	private final int length;
+	private volatile String flat = null;
+
+	private Rope(CharSequence left, CharSequence right) {
+		this.left = left;
+		this.right = right;
+		this.length = left.length() + right.length();
+	}
+
+	static CharSequence concat(CharSequence left, CharSequence right) {
+		if(left.length() + right.length() < FLAT_LIMIT) return left.toString().concat(right.toString());
+		return new Rope(flatOrSelf(left), flatOrSelf(right));
+	}
+
+	// an already flattened rope is replaced by its string, so the tree does not keep it alive.
+	private static CharSequence flatOrSelf(CharSequence text) {
+		if(text instanceof Rope) {
+			String flat = ((Rope)text).flat;
+			if(flat != null) return flat;
+		}
+		return text;
+	}
+
+	@Override
+	public int length() {
+		return this.length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		return toString().charAt(index);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		String flat = this.flat;
+		if(flat != null) return flat;
+		return flatten();
+	}
+
+	// iterative so that the deep left leaning trees built by loops cannot overflow the stack.
+	private synchronized String flatten() {
+		if(this.flat != null) return this.flat;
+
+		StringBuilder builder = new StringBuilder(this.length);
+		ArrayDeque<CharSequence> pending = new ArrayDeque<>();
+		pending.push(this);
+		while(!pending.isEmpty()) {
+			CharSequence text = pending.pop();
+			if(text instanceof Rope) {
+				Rope rope = (Rope)text;
+				CharSequence left = rope.left;
+				CharSequence right = rope.right;
+				if(left != null && right != null) {
+					pending.push(right);
+					pending.push(left);
+					continue;
+				}
+			}
+			builder.append(text.toString());
+		}
+
+		String flat = builder.toString();
+		this.flat = flat;
+		this.left = null;
+		this.right = null;
+		return flat;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(!(other instanceof Rope)) return false;
+		return toString().equals(other.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+}
@@ -0,0 +1,94 @@
+package com.ota.jlox;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Keeps a warm JVM alive and runs every script received on a unix domain socket in its own Session,
+// on its own virtual thread. -Djlox.server.maxSteps, -Djlox.server.timeoutMillis and
+// -Djlox.server.maxMemory (bytes) limit every run.
+class Server {
+	private static final long MAX_STEPS = Long.getLong("jlox.server.maxSteps", 0);
+	private static final long TIMEOUT_MILLIS = Long.getLong("jlox.server.timeoutMillis", 0);
+	private static final long MAX_MEMORY = Long.getLong("jlox.server.maxMemory", -1);
+
+	private final Path socket;
+	private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+
+	Server(String socket) {
+		this.socket = Paths.get(socket);
+	}
+
+	void serve() throws IOException {
+		Files.deleteIfExists(this.socket);
+
+		try(ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			server.bind(UnixDomainSocketAddress.of(this.socket));
+			this.socket.toFile().deleteOnExit();
+			System.err.println("jlox listening on " + this.socket);
+
+			while(true) {
+				SocketChannel client = server.accept();
+				this.workers.execute(() -> handle(client));
+			}
+		}
+	}
+
+	private void handle(SocketChannel client) {
+		try(client) {
+			Frame request = Frame.read(client);
+			if(request == null) return;
+
+			// not flushed per line, which would send a frame per print: Session.end flushes the run.
+			PrintWriter out = new PrintWriter(new Frame.Sink(client, Frame.OUT));
+			PrintWriter err = new PrintWriter(new Frame.Sink(client, Frame.ERR));
+			Session session = new Session(out, err);
+			session.limit(MAX_STEPS, TIMEOUT_MILLIS);
+			session.limitMemory(MAX_MEMORY);
+
+			int status;
+			try {
+				if(request.type == Frame.FILE) {
+					status = runFile(session, request.text());
+				} else if(request.type == Frame.SOURCE) {
+					status = session.run(request.text());
+				} else {
+					err.println("Unknown request '" + (char)request.type + "'.");
+					status = 64;
+				}
+			} catch(Throwable error) {
+				// fails this run only, e.g. a stack overflow outside of any function, the client
+				// still gets its exit frame.
+				System.err.println("jlox: " + error);
+				err.println("Internal error: " + error);
+				status = 70;
+			}
+
+			out.flush();
+			err.flush();
+			Frame.writeStatus(client, status);
+		} catch(IOException error) {
+			System.err.println("jlox: " + error.getMessage());
+		}
+	}
+
+	private static int runFile(Session session, String filepath) {
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(Paths.get(filepath));
+		} catch(IOException error) {
+			session.err.println("Could not read '" + filepath + "'.");
+			return 66;
+		}
+		return session.run(new String(bytes, Charset.defaultCharset()));
+	}
+}
@@ -0,0 +1,230 @@
+package com.ota.jlox;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import java.util.Map;
+
+// One isolated run context: its own interpreter, globals, error flags and output sinks.
+// Sessions share no state, so any number of them can run at once on different threads,
+// but a single Session must only be used by one thread at a time. Final, as the constructors hand
+// this to the interpreter they create.
+public final class Session {
+	final Interpreter interpreter;
+	final PrintWriter out;
+	final PrintWriter err;
+
+	boolean hadError = false;
+	boolean hadRuntimeError = false;
+
+	private long maxSteps = 0;
+	private long timeoutMillis = 0;
+	private long maxMemory = -1;
+	private Memory memory = null;
+
+	// prints to the standard output through a buffered Output, flushed at the end of every
+	// execution and before reporting an error.
+	public Session() {
+		this(new PrintWriter(Output.stdout(), false), new PrintWriter(System.err, true));
+	}
+
+	public Session(Writer out, Writer err) {
+		this(new PrintWriter(out, true), new PrintWriter(err, true));
+	}
+
+	Session(PrintWriter out, PrintWriter err) {
+		this.out = out;
+		this.err = err;
+		this.interpreter = new Interpreter(this);
+	}
+
+	// session whose globals are read and written straight through the given map. The natives live
+	// in an environment enclosing it, so the map only holds what the host and the script put there
+	// and a host value shadows a native of the same name.
+	Session(PrintWriter out, PrintWriter err, Map<String, Object> globals) {
+		this.out = out;
+		this.err = err;
+		Environment natives = new Environment();
+		Natives.define(natives);
+		this.interpreter = new Interpreter(this, new Environment(globals, natives));
+	}
+
+	// limits every following execution to a number of loop iterations plus function calls, and
+	// to a wall clock duration. Exceeding one is a runtime error, 0 means unlimited.
+	public void limit(long maxSteps, long timeoutMillis) {
+		this.maxSteps = maxSteps;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	// accounts the memory kept alive by the following executions, exceeding maxBytes is a runtime
+	// error. 0 only accounts, for peakMemory.
+	public void limitMemory(long maxBytes) {
+		this.maxMemory = maxBytes;
+	}
+
+	// approximate peak of the memory kept alive by the last execution, -1 without accounting.
+	public long peakMemory() {
+		return (this.memory == null) ? -1 : this.memory.peak();
+	}
+
+	// defines the static methods of library annotated with @Native as global functions. The class
+	// and the methods must be public, see the overload for other ones.
+	public void bind(Class<?> library) {
+		Natives.bind(this.interpreter.globals, library);
+	}
+
+	// the same with the access of lookup: MethodHandles.lookup() in the host binds the classes and
+	// methods its own code can access. Nothing is defined when a method cannot be bound.
+	public void bind(MethodHandles.Lookup lookup, Class<?> library) {
+		Natives.bind(this.interpreter.globals, lookup, library);
+	}
+
+	// defines open and create, which read and write any file the JVM can. Left out by default, the
+	// server and the script engine run scripts that must not touch the files of their host.
+	public void allowFiles() {
+		Natives.bind(this.interpreter.globals, Library.Files.class);
+	}
+
+	// host numbers of any type are converted to lox numbers.
+	public void define(String name, Object value) {
+		this.interpreter.globals.define(name, Operators.toLox(value));
+	}
+
+	// returns the exit status of the run, -1 for a static error and -2 for a runtime error.
+	public int run(String source) {
+		CompiledScript script = compile(source);
+		if(script == null) return status();
+		return execute(script);
+	}
+
+	// lexes, parses and resolves the source, errors are reported to this session and give null.
+	public CompiledScript compile(String source) {
+		Events.Compile event = new Events.Compile();
+		event.begin();
+		long start = System.nanoTime();
+
+		Lexer lexer = new Lexer(this, source);
+		List<Token> tokens = lexer.scanTokens();
+		long lexed = System.nanoTime();
+
+		Parser parser = new Parser(this, tokens);
+		List<Stmt> statements = parser.parse();
+		long parsed = System.nanoTime();
+		long resolved = parsed;
+
+		if(!this.hadError) {
+			Resolver resolver = new Resolver(this);
+			resolver.resolve(statements);
+			resolved = System.nanoTime();
+		}
+
+		if(Metrics.ENABLED) {
+			Metrics.lexNanos.add(lexed - start);
+			Metrics.parseNanos.add(parsed - lexed);
+			Metrics.resolveNanos.add(resolved - parsed);
+		}
+
+		event.end();
+		if(event.shouldCommit()) {
+			event.lexDuration = lexed - start;
+			event.parseDuration = parsed - lexed;
+			event.resolveDuration = resolved - parsed;
+			event.tokens = tokens.size();
+			event.succeeded = !this.hadError;
+			event.commit();
+		}
+
+		if(this.hadError) return null;
+		return new CompiledScript(statements);
+	}
+
+	public int execute(CompiledScript script) {
+		long start = begin();
+		try {
+			this.interpreter.interpret(script.statements);
+		} finally {
+			end();
+		}
+		if(Metrics.ENABLED) Metrics.interpretNanos.add(System.nanoTime() - start);
+		return status();
+	}
+
+	// runs script like execute, but lets a runtime error propagate to the caller, e.g. the script
+	// engine turning it into a ScriptException. The tasks are still awaited and the files closed.
+	// Returns the value of a trailing expression statement, nil without one.
+	Object evaluate(CompiledScript script) {
+		long start = begin();
+		Object value;
+		try {
+			value = this.interpreter.runForValue(script.statements);
+		} finally {
+			end();
+		}
+		if(Metrics.ENABLED) Metrics.interpretNanos.add(System.nanoTime() - start);
+		return value;
+	}
+
+	// runs script over every line read from lines, see Interpreter.interpretLines. The limits apply
+	// to the whole run.
+	int executeLines(CompiledScript script, Lines lines) throws IOException {
+		long start = begin();
+		try {
+			this.interpreter.interpretLines(script.statements, lines);
+		} finally {
+			end();
+		}
+		if(Metrics.ENABLED) Metrics.interpretNanos.add(System.nanoTime() - start);
+		return status();
+	}
+
+	private long begin() {
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		boolean limited = this.maxSteps > 0 || this.timeoutMillis > 0;
+		this.interpreter.budget = limited ? new Budget(this.maxSteps, this.timeoutMillis) : null;
+		if(this.maxMemory >= 0) {
+			this.memory = new Memory(this.maxMemory);
+			this.interpreter.globals.memory = this.memory;
+		}
+		return start;
+	}
+
+	private void end() {
+		this.interpreter.awaitTasks();
+		this.interpreter.closeFiles();
+		this.out.flush();
+		this.err.flush();
+	}
+
+	public int status() {
+		if(this.hadError) return -1;
+		if(this.hadRuntimeError) return -2;
+		return 0;
+	}
+
+	void error(int line, String message) {
+		report(line, "", message);
+	}
+
+	private void report(int line, String where, String message) {
+		this.out.flush();
+		this.err.println("[line " + line + "] Error " + where + ": " + message);
+		this.hadError = true;
+	}
+
+	void error(Token token, String message) {
+		String location = (token.type == TokenType.EOF) ?
+			" at end" :
+			" at '" + token.lexeme + "'";
+		report(token.line, location, message);
+	}
+
+	void runtimeError(RuntimeError error) {
+		Events.runtimeError(error);
+		if(Metrics.ENABLED) Metrics.runtimeErrors.increment();
+		this.out.flush();
+		this.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+		this.hadRuntimeError = true;
+	}
+}
@@ -0,0 +1,79 @@
+package com.ota.jlox;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Hidden class of an instance: the slot of each of its fields in the instance array. Instances of
+// a class which got the same fields in the same order share one Shape, so every get and set node
+// can cache what a name resolved to on the last Shape it saw and, while the next instances have
+// that Shape too, access the field with a reference check and an array load.
+final class Shape {
+	// what a name resolves to on a Shape. Immutable, so the inline caches of shared nodes can be
+	// replaced by any thread without locking.
+	static final class Property {
+		final Shape shape;
+		// slot of the field, -1 when the instances do not have it.
+		final int slot;
+		// for reads of a name which is not a field, the method of the class or null.
+		final LoxFunction method;
+		// for stores, the shape of the instance after the store: the same or one more field.
+		final Shape target;
+		// what the inline caches hold, made once with the property rather than on every miss.
+		final WeakReference<Property> reference;
+
+		Property(Shape shape, int slot, LoxFunction method, Shape target) {
+			this.shape = shape;
+			this.slot = slot;
+			this.method = method;
+			this.target = target;
+			this.reference = new WeakReference<>(this);
+		}
+	}
+
+	final LoxClass klass;
+	final int size;
+	private final Map<String, Integer> slots;
+	private final ConcurrentHashMap<String, Shape> transitions = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Property> getters = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Property> setters = new ConcurrentHashMap<>();
+
+	// the empty shape new instances of the class start with.
+	Shape(LoxClass klass) {
+		this(klass, new HashMap<>());
+	}
+
+	private Shape(LoxClass klass, Map<String, Integer> slots) {
+		this.klass = klass;
+		this.slots = slots;
+		this.size = slots.size();
+	}
+
+	Property getter(String name) {
+		return this.getters.computeIfAbsent(name, this::resolveGetter);
+	}
+
+	Property setter(String name) {
+		return this.setters.computeIfAbsent(name, this::resolveSetter);
+	}
+
+	private Property resolveGetter(String name) {
+		Integer slot = this.slots.get(name);
+		if(slot != null) return new Property(this, slot, null, this);
+		return new Property(this, -1, this.klass.findMethod(name), this);
+	}
+
+	private Property resolveSetter(String name) {
+		Integer slot = this.slots.get(name);
+		if(slot != null) return new Property(this, slot, null, this);
+		return new Property(this, this.size, null, this.transitions.computeIfAbsent(name, this::extend));
+	}
+
+	private Shape extend(String name) {
+		Map<String, Integer> slots = new HashMap<>(this.slots);
+		slots.put(name, this.size);
+		this.klass.fieldCount = Math.max(this.klass.fieldCount, slots.size());
+		return new Shape(this.klass, slots);
+	}
+}
@@ -6,6 +6,7 @@ abstract class Stmt {
 
 	interface Visitor<R> {
 		R visitBlockStmt(Block stmt);
+		R visitClassStmt(Class stmt);
 		R visitExpressionStmt(Expression stmt);
 		R visitFunctionStmt(Function stmt);
 		R visitIfStmt(If stmt);
@@ -13,6 +14,7 @@ abstract class Stmt {
 		R visitReturnStmt(Return stmt);
 		R visitVarStmt(Var stmt);
 		R visitWhileStmt(While stmt);
+		R visitYieldStmt(Yield stmt);
 	}
 
 
@@ -30,6 +32,24 @@ abstract class Stmt {
 		final List<Stmt> statements;
 	}
 
+	static class Class extends Stmt {
+
+		Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
+			this.name = name;
+			this.superclass = superclass;
+			this.methods = methods;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitClassStmt(this);
+		}
+
+		final Token name;
+		final Expr.Variable superclass;
+		final List<Stmt.Function> methods;
+	}
+
 	static class Expression extends Stmt {
 
 		Expression(Expr expression) {
@@ -60,6 +80,14 @@ abstract class Stmt {
 		final Token name;
 		final List<Token> params;
 		final List<Stmt> body;
+
+		// whether the body yields, which makes calls return a LoxGenerator. Written once by the Resolver.
+		boolean generator = false;
+
+		// tiering state: calls and loop iterations counted so far, and the compiled body once ready.
+		int heat = 0;
+		volatile boolean queued = false;
+		volatile ClosureCompiler.Code compiled = null;
 	}
 
 	static class If extends Stmt {
@@ -129,7 +157,8 @@ abstract class Stmt {
 
 	static class While extends Stmt {
 
-		While(Expr condition, Stmt body) {
+		While(Token keyword, Expr condition, Stmt body) {
+			this.keyword = keyword;
 			this.condition = condition;
 			this.body = body;
 		}
@@ -139,10 +168,40 @@ abstract class Stmt {
 			return visitor.visitWhileStmt(this);
 		}
 
+		final Token keyword;
 		final Expr condition;
 		final Stmt body;
+
+		// on-stack replacement state: iterations counted so far, and the compiled loop once ready.
+		int heat = 0;
+		volatile boolean queued = false;
+		volatile ClosureCompiler.Code compiled = null;
 	}
 
+	static class Yield extends Stmt {
+
+		Yield(Token keyword, Expr value) {
+			this.keyword = keyword;
+			this.value = value;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitYieldStmt(this);
+		}
+
+		final Token keyword;
+		final Expr value;
+
+	}
+
+	// whether a yield of the enclosing function is inside, so that a LoxGenerator must step
+	// through the statement. Written once by the Resolver.
+	boolean yields = false;
+
+	// times the node was executed, only counted by interpreters running with countHits.
+	// Plain increments: concurrent runs of a shared script may lose a few counts.
+	long hits = 0;
 
 	abstract <R> R accept(Visitor<R> visitor);
 }
@@ -0,0 +1,78 @@
+package com.ota.jlox;
+
+import java.time.Duration;
+import java.util.ArrayList;
+
+// A function called on its own virtual thread by spawn(function), with its own Interpreter over
+// the globals of the spawning one. See Environment.share for the variables tasks share.
+class Task {
+	private final LoxCallable function;
+	private final Thread thread;
+	private volatile Object result = null;
+	// what the function threw, reported by await, or at the end of the run when nobody joined.
+	private volatile Throwable failure = null;
+	private volatile boolean joined = false;
+
+	Task(Interpreter parent, LoxCallable function) {
+		this.function = function;
+		parent.globals.share();
+		Environment.share(function);
+
+		Interpreter interpreter = new Interpreter(parent);
+		this.thread = Thread.ofVirtual().name("lox task").unstarted(() -> run(interpreter));
+	}
+
+	void start() {
+		this.thread.start();
+	}
+
+	private void run(Interpreter interpreter) {
+		try {
+			this.result = this.function.call(interpreter, new ArrayList<>());
+		} catch(Throwable error) {
+			// whatever it is, or await would return nil for a function that never returned.
+			this.failure = error;
+		} finally {
+			interpreter.closeFiles();
+		}
+	}
+
+	// the value the function returned, once it has.
+	Object join(Interpreter interpreter) {
+		if(Thread.currentThread() == this.thread) throw new Natives.Error("A task cannot await itself.");
+		this.joined = true;
+		await(interpreter, this.thread);
+		Throwable failure = this.failure;
+		if(failure instanceof RuntimeException) throw (RuntimeException)failure;
+		if(failure != null) throw new Natives.Error("Task failed: " + failure + ".");
+		return this.result;
+	}
+
+	// waits for the end of the task, and returns what it threw unless it was joined.
+	Throwable finish(Interpreter interpreter) {
+		await(interpreter, this.thread);
+		return this.joined ? null : this.failure;
+	}
+
+	// waits for thread, checking the time limit of the run every 10ms.
+	private static void await(Interpreter interpreter, Thread thread) {
+		try {
+			Budget budget = interpreter.budget;
+			if(budget == null) {
+				thread.join();
+				return;
+			}
+			while(!thread.join(Duration.ofMillis(10))) {
+				if(budget.expired()) throw new Natives.Error("Execution time limit exceeded.");
+			}
+		} catch(InterruptedException error) {
+			Thread.currentThread().interrupt();
+			throw new Natives.Error("Interrupted.");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "<task>";
+	}
+}
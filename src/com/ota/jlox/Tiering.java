@@ -0,0 +1,75 @@
+package com.ota.jlox;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Promotion of hot functions from the Interpreter to the ClosureCompiler. Calls and loop
+// iterations heat a function up, past the threshold its body is compiled on a background thread
+// and the next calls of LoxFunction pick the compiled body up from the volatile field.
+// Interpreted while loops of functions are also counted on their own: once a loop is compiled, the
+// running visitWhileStmt hands its current Environment over to the compiled loop at the next
+// iteration (on-stack replacement), so a long loop in a function called once still gets faster.
+// Loops of the top level stay interpreted, switched they ran slower for their first million
+// iterations or so (see OsrBenchmark).
+// -Djlox.tiering=false keeps everything interpreted, -Djlox.tiering.threshold and
+// -Djlox.tiering.osrThreshold change the heat needed and -Djlox.tiering.log=true reports the
+// compilations on stderr.
+class Tiering {
+	static final boolean ENABLED = !"false".equals(System.getProperty("jlox.tiering"));
+	static final int THRESHOLD = Integer.getInteger("jlox.tiering.threshold", 1000);
+	static final int OSR_THRESHOLD = Integer.getInteger("jlox.tiering.osrThreshold", 10000);
+	private static final boolean LOG = Boolean.getBoolean("jlox.tiering.log");
+
+	private static final ExecutorService compiler = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "jlox-compiler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// the heat is a plain counter, concurrent interpreters may lose increments which only delays
+	// the compilation a little.
+	static void tick(Interpreter interpreter, Stmt.Function function) {
+		if(function.queued || interpreter.countHits) return;
+		if(++function.heat < THRESHOLD) return;
+		queue(function);
+	}
+
+	// counts one iteration of an interpreted loop, returns the compiled loop once it is ready.
+	static ClosureCompiler.Code backEdge(Interpreter interpreter, Stmt.While loop) {
+		if(interpreter.countHits || interpreter.function == null) return null;
+		if(!loop.queued && ++loop.heat >= OSR_THRESHOLD) queue(loop);
+		return loop.compiled;
+	}
+
+	private static synchronized void queue(Stmt.While loop) {
+		if(loop.queued) return;
+		loop.queued = true;
+		compiler.execute(() -> compile(loop));
+	}
+
+	private static void compile(Stmt.While loop) {
+		String name = "loop:" + loop.keyword.line;
+		try {
+			loop.compiled = new ClosureCompiler().compile(loop);
+			if(LOG) System.err.println("[tiering] compiled " + name);
+		} catch(ClosureCompiler.Unsupported unsupported) {
+			if(LOG) System.err.println("[tiering] " + name + " stays interpreted: " + unsupported.getMessage());
+		}
+	}
+
+	private static synchronized void queue(Stmt.Function function) {
+		if(function.queued) return;
+		function.queued = true;
+		compiler.execute(() -> compile(function));
+	}
+
+	private static void compile(Stmt.Function function) {
+		String name = function.name.lexeme + ":" + function.name.line;
+		try {
+			function.compiled = new ClosureCompiler().compile(function.body);
+			if(LOG) System.err.println("[tiering] compiled " + name);
+		} catch(ClosureCompiler.Unsupported unsupported) {
+			if(LOG) System.err.println("[tiering] " + name + " stays interpreted: " + unsupported.getMessage());
+		}
+	}
+}
@@ -13,7 +13,7 @@ enum TokenType {
 	IDENTIFIER, STRING, NUMBER,
 
 	AND, CLASS, ELSE, FALSE, FUN, FOR, IF, NIL, OR,
-	PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE,
+	PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE, YIELD,
 
 	EOF
 
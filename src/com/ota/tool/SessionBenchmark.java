@@ -0,0 +1,101 @@
+package com.ota.tool;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.ota.jlox.CompiledScript;
+import com.ota.jlox.Session;
+
+// Throughput of N independent runs of one script, sequentially and then on virtual threads,
+// either compiling the source on every run or sharing one CompiledScript.
+public class SessionBenchmark {
+    private static final String DEFAULT_SCRIPT =
+        "fun fib(n) { if(n < 2) return n; return fib(n - 1) + fib(n - 2); }\n" +
+        "print fib(18);\n";
+
+    public static void main(String args[]) throws Exception {
+        if(args.length > 2) {
+            System.out.println("Usage: session_benchmark [runs] [script]");
+            System.exit(-1);
+        }
+        int runs = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+        String source = (args.length > 1) ? read(args[1]) : DEFAULT_SCRIPT;
+
+        // warm up both paths so the JIT has compiled the interpreter before measuring.
+        CompiledScript script = new Session().compile(source);
+        sequential(source, runs / 4);
+        concurrent(source, runs / 4);
+        shared(script, runs / 4);
+
+        long sequential = sequential(source, runs);
+        long concurrent = concurrent(source, runs);
+        long shared = shared(script, runs);
+
+        System.out.println("processors: " + Runtime.getRuntime().availableProcessors());
+        report("sequential", runs, sequential);
+        report("concurrent", runs, concurrent);
+        report("shared", runs, shared);
+        System.out.printf("speedup   : %.2fx%n", (double)sequential / concurrent);
+    }
+
+    private static long sequential(String source, int runs) {
+        long start = System.nanoTime();
+        for(int i = 0; i < runs; i++) {
+            check(runOnce(source));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long concurrent(String source, int runs) throws Exception {
+        long start = System.nanoTime();
+        try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Integer>> results = new ArrayList<>();
+            for(int i = 0; i < runs; i++) {
+                results.add(executor.submit(() -> runOnce(source)));
+            }
+            for(Future<Integer> result : results) {
+                check(result.get());
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long shared(CompiledScript script, int runs) throws Exception {
+        long start = System.nanoTime();
+        try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Integer>> results = new ArrayList<>();
+            for(int i = 0; i < runs; i++) {
+                results.add(executor.submit(() -> new Session(Writer.nullWriter(), Writer.nullWriter()).execute(script)));
+            }
+            for(Future<Integer> result : results) {
+                check(result.get());
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static int runOnce(String source) {
+        Session session = new Session(Writer.nullWriter(), Writer.nullWriter());
+        return session.run(source);
+    }
+
+    private static void check(int status) {
+        if(status != 0) throw new IllegalStateException("Script failed with status " + status + ".");
+    }
+
+    private static void report(String name, int runs, long nanos) {
+        System.out.printf("%-10s: %d runs in %.1f ms, %.1f runs/s%n", name, runs, nanos / 1e6, runs / (nanos / 1e9));
+    }
+
+    private static String read(String filepath) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(filepath)), Charset.defaultCharset());
+    }
+}
@@ -0,0 +1,129 @@
+package com.ota.jlox;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Kernels on the widest SIMD registers of the machine, the remainder of each array is done one
+// element at a time. Only loaded when the jdk.incubator.vector module is present, see Kernels.
+// Kept out of src, in the vector source tree, so that the rest builds without the module.
+final class VectorKernels extends Kernels {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	double sum(double[] a, int length) {
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+			sum = sum.add(DoubleVector.fromArray(SPECIES, a, i));
+		}
+		double result = sum.reduceLanes(VectorOperators.ADD);
+		for(; i < length; i++) result += a[i];
+		return result;
+	}
+
+	@Override
+	double dot(double[] a, double[] b, int length) {
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+			DoubleVector x = DoubleVector.fromArray(SPECIES, a, i);
+			sum = sum.add(x.mul(DoubleVector.fromArray(SPECIES, b, i)));
+		}
+		double result = sum.reduceLanes(VectorOperators.ADD);
+		for(; i < length; i++) result += a[i] * b[i];
+		return result;
+	}
+
+	@Override
+	double min(double[] a, int length) {
+		DoubleVector min = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+		int i = 0;
+		for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+			min = min.min(DoubleVector.fromArray(SPECIES, a, i));
+		}
+		double result = min.reduceLanes(VectorOperators.MIN);
+		for(; i < length; i++) result = Math.min(result, a[i]);
+		return result;
+	}
+
+	@Override
+	double max(double[] a, int length) {
+		DoubleVector max = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+		int i = 0;
+		for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+			max = max.max(DoubleVector.fromArray(SPECIES, a, i));
+		}
+		double result = max.reduceLanes(VectorOperators.MAX);
+		for(; i < length; i++) result = Math.max(result, a[i]);
+		return result;
+	}
+
+	// a loop per operator: lanewise with an operator only known at run time is not intrinsified.
+	@Override
+	void apply(int op, double[] a, double[] b, double[] out, int length) {
+		int i = 0;
+		int bound = SPECIES.loopBound(length);
+		int step = SPECIES.length();
+		switch(op) {
+			case ADD:
+				for(; i < bound; i += step) DoubleVector.fromArray(SPECIES, a, i).add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+				break;
+			case SUBTRACT:
+				for(; i < bound; i += step) DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+				break;
+			case MULTIPLY:
+				for(; i < bound; i += step) DoubleVector.fromArray(SPECIES, a, i).mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+				break;
+			default:
+				for(; i < bound; i += step) DoubleVector.fromArray(SPECIES, a, i).div(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+				break;
+		}
+		for(; i < length; i++) out[i] = apply(op, a[i], b[i]);
+	}
+
+	@Override
+	void apply(int op, double[] a, double k, double[] out, int length) {
+		int i = 0;
+		int bound = SPECIES.loopBound(length);
+		int step = SPECIES.length();
+		switch(op) {
+			case ADD:
+				for(; i < bound; i += step) DoubleVector.fromArray(SPECIES, a, i).add(k).intoArray(out, i);
+				break;
+			case SUBTRACT:
+				for(; i < bound; i += step) DoubleVector.fromArray(SPECIES, a, i).sub(k).intoArray(out, i);
+				break;
+			case MULTIPLY:
+				for(; i < bound; i += step) DoubleVector.fromArray(SPECIES, a, i).mul(k).intoArray(out, i);
+				break;
+			default:
+				for(; i < bound; i += step) DoubleVector.fromArray(SPECIES, a, i).div(k).intoArray(out, i);
+				break;
+		}
+		for(; i < length; i++) out[i] = apply(op, a[i], k);
+	}
+
+	@Override
+	void apply(int op, double k, double[] b, double[] out, int length) {
+		DoubleVector x = DoubleVector.broadcast(SPECIES, k);
+		int i = 0;
+		int bound = SPECIES.loopBound(length);
+		int step = SPECIES.length();
+		switch(op) {
+			case ADD:
+				for(; i < bound; i += step) x.add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+				break;
+			case SUBTRACT:
+				for(; i < bound; i += step) x.sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+				break;
+			case MULTIPLY:
+				for(; i < bound; i += step) x.mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+				break;
+			default:
+				for(; i < bound; i += step) x.div(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+				break;
+		}
+		for(; i < length; i++) out[i] = apply(op, k, b[i]);
+	}
+}